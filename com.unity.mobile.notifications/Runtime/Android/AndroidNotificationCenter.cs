@@ -35,6 +35,38 @@ namespace Unity.Notifications.Android
         Delivered = 2,
     }
 
+    /// <summary>
+    /// State of the queue of scheduling and cancelling requests waiting to be carried out in the background.
+    /// Can be used to slow down scheduling before the queue fills up, see <see cref="AndroidNotificationCenter.QueueStatus"/>.
+    /// </summary>
+    public struct AndroidNotificationQueueStatus
+    {
+        /// <summary>
+        /// Requests that are waiting to be carried out.
+        /// </summary>
+        public int PendingRequests { get; internal set; }
+
+        /// <summary>
+        /// The most requests that were waiting at the same time.
+        /// </summary>
+        public int HighWatermark { get; internal set; }
+
+        /// <summary>
+        /// How many requests can wait before scheduling is held back, 0 when there is no limit.
+        /// </summary>
+        public int Limit { get; internal set; }
+
+        /// <summary>
+        /// How many notifications were not scheduled because the queue was full.
+        /// </summary>
+        public long RejectedNotifications { get; internal set; }
+
+        /// <summary>
+        /// Whether scheduling a notification now would be held back or refused.
+        /// </summary>
+        public bool IsFull => Limit > 0 && PendingRequests >= Limit;
+    }
+
     struct NotificationManagerJni
     {
         private AndroidJavaClass klass;
@@ -66,6 +98,7 @@ namespace Unity.Notifications.Android
         private JniMethodID getNotificationGroupAlertBehavior;
         private JniMethodID getNotificationChannelId;
         private JniMethodID scheduleNotification;
+        private JniMethodID scheduleNotifications;
         private JniMethodID createNotificationBuilder;
 
 
@@ -83,6 +116,7 @@ namespace Unity.Notifications.Android
             getNotificationGroupAlertBehavior = default;
             getNotificationChannelId = default;
             scheduleNotification = default;
+            scheduleNotifications = default;
             createNotificationBuilder = default;
 
 #if UNITY_ANDROID && !UNITY_EDITOR
@@ -131,6 +165,7 @@ namespace Unity.Notifications.Android
             getNotificationGroupAlertBehavior = JniApi.FindMethod(clazz, "getNotificationGroupAlertBehavior", "(Landroid/app/Notification;)I", true);
             getNotificationChannelId = JniApi.FindMethod(clazz, "getNotificationChannelId", "(Landroid/app/Notification;)Ljava/lang/String;", true);
             scheduleNotification = JniApi.FindMethod(clazz, "scheduleNotification", "(Landroid/app/Notification$Builder;Z)I", false);
+            scheduleNotifications = JniApi.FindMethod(clazz, "scheduleNotifications", "([Landroid/app/Notification$Builder;Z)[I", false);
             createNotificationBuilder = JniApi.FindMethod(clazz, "createNotificationBuilder", "(Ljava/lang/String;)Landroid/app/Notification$Builder;", false);
         }
 
@@ -224,6 +259,11 @@ namespace Unity.Notifications.Android
             return self.Call<int>(scheduleNotification, notificationBuilder, customized);
         }
 
+        public int[] ScheduleNotifications(AndroidJavaObject[] notificationBuilders, bool customized)
+        {
+            return self.Call<int[]>(scheduleNotifications, notificationBuilders, customized);
+        }
+
         public bool CheckIfPendingNotificationIsRegistered(int id)
         {
             return self.Call<bool>("checkIfPendingNotificationIsRegistered", id);
@@ -234,6 +274,21 @@ namespace Unity.Notifications.Android
             self.Call("cancelPendingNotification", id);
         }
 
+        public void CancelPendingNotifications(int[] ids)
+        {
+            self.Call("cancelPendingNotifications", ids);
+        }
+
+        public void CancelPendingNotificationsInChannel(string channelId)
+        {
+            self.Call("cancelPendingNotificationsInChannel", channelId);
+        }
+
+        public void CancelPendingNotificationsInGroup(string group)
+        {
+            self.Call("cancelPendingNotificationsInGroup", group);
+        }
+
         public void CancelDisplayedNotification(int id)
         {
             self.Call("cancelDisplayedNotification", id);
@@ -282,6 +337,11 @@ namespace Unity.Notifications.Android
             return self.Call<bool>("canScheduleExactAlarms");
         }
 
+        public long[] GetQueueStatus()
+        {
+            return self.Call<long[]>("getQueueStatus");
+        }
+
         public PermissionStatus AreNotificationsEnabled()
         {
             return (PermissionStatus)self.Call<int>("areNotificationsEnabled");
@@ -738,6 +798,27 @@ namespace Unity.Notifications.Android
             }
         }
 
+        /// <summary>
+        /// State of the queue of requests waiting to be carried out in the background.
+        /// The queue is limited, when it is full scheduling waits or is refused, depending on settings.
+        /// </summary>
+        public static AndroidNotificationQueueStatus QueueStatus
+        {
+            get
+            {
+                if (!Initialize())
+                    return default;
+                var status = s_Jni.NotificationManager.GetQueueStatus();
+                return new AndroidNotificationQueueStatus()
+                {
+                    PendingRequests = (int)status[0],
+                    HighWatermark = (int)status[1],
+                    Limit = (int)status[2],
+                    RejectedNotifications = status[3],
+                };
+            }
+        }
+
         /// <summary>
         /// Request user permission to schedule alarms at exact times.
         /// Only works on Android 12 and later, older versions can schedule at exact times without requesting it.
@@ -918,7 +999,7 @@ namespace Unity.Notifications.Android
         /// </summary>
         /// <param name="notification">Data for the notification</param>
         /// <param name="channelId">ID of the channel to send notification to</param>
-        /// <returns>The generated ID for the notification</returns>
+        /// <returns>The generated ID for the notification, -1 if it was refused because too many requests are pending</returns>
         public static int SendNotification(AndroidNotification notification, string channelId)
         {
             if (!Initialize())
@@ -967,11 +1048,61 @@ namespace Unity.Notifications.Android
                 id = ScheduleNotification(notificationBuilder, true);
         }
 
+        /// <summary>
+        /// Schedule multiple notifications at once, each will be shown at the time specified in its notification struct.
+        /// This is faster than scheduling them one by one, as all of them are saved and scheduled together.
+        /// </summary>
+        /// <param name="notifications">Data for the notifications</param>
+        /// <param name="channelId">ID of the channel to send notifications to</param>
+        /// <returns>The generated IDs for the notifications, in the same order, null if they were refused because too many requests are pending</returns>
+        public static int[] SendNotifications(AndroidNotification[] notifications, string channelId)
+        {
+            if (notifications == null)
+                throw new ArgumentNullException(nameof(notifications));
+            if (!Initialize())
+                return null;
+
+            var builders = new AndroidJavaObject[notifications.Length];
+            try
+            {
+                for (int i = 0; i < notifications.Length; ++i)
+                    builders[i] = CreateNotificationBuilder(notifications[i], channelId);
+                return ScheduleNotifications(builders, false);
+            }
+            finally
+            {
+                foreach (var builder in builders)
+                    builder?.Dispose();
+            }
+        }
+
+        /// <summary>
+        /// Schedule multiple notifications created using the provided Notification.Builder objects.
+        /// Notification builders should be created by calling CreateNotificationBuilder.
+        /// </summary>
+        /// <param name="notificationBuilders">Notification builders from which to construct the notifications.</param>
+        /// <returns>The IDs of the notifications, in the same order</returns>
+        public static int[] SendNotifications(AndroidJavaObject[] notificationBuilders)
+        {
+            if (notificationBuilders == null)
+                throw new ArgumentNullException(nameof(notificationBuilders));
+            if (!Initialize())
+                return null;
+            return ScheduleNotifications(notificationBuilders, true);
+        }
+
         static int ScheduleNotification(AndroidJavaObject notificationBuilder, bool customized)
         {
             return s_Jni.NotificationManager.ScheduleNotification(notificationBuilder, customized);
         }
 
+        static int[] ScheduleNotifications(AndroidJavaObject[] notificationBuilders, bool customized)
+        {
+            if (notificationBuilders.Length == 0)
+                return new int[0];
+            return s_Jni.NotificationManager.ScheduleNotifications(notificationBuilders, customized);
+        }
+
         /// <summary>
         /// Update an already scheduled notification.
         /// If a notification with the specified id was already scheduled it will be overridden with the information from the passed notification struct.
@@ -1018,6 +1149,41 @@ namespace Unity.Notifications.Android
                 s_Jni.NotificationManager.CancelPendingNotification(id);
         }
 
+        /// <summary>
+        /// Cancel multiple scheduled notifications at once.
+        /// Notifications will no longer be displayed on their scheduled time. They will not be removed from the status bar if already delivered.
+        /// </summary>
+        /// <param name="ids">IDs of the notifications to cancel</param>
+        public static void CancelScheduledNotifications(int[] ids)
+        {
+            if (ids == null)
+                throw new ArgumentNullException(nameof(ids));
+            if (ids.Length > 0 && Initialize())
+                s_Jni.NotificationManager.CancelPendingNotifications(ids);
+        }
+
+        /// <summary>
+        /// Cancel all scheduled notifications that were sent to the given channel.
+        /// Notifications will not be removed from the status bar if already delivered.
+        /// </summary>
+        /// <param name="channelId">ID of the channel</param>
+        public static void CancelScheduledNotificationsInChannel(string channelId)
+        {
+            if (Initialize())
+                s_Jni.NotificationManager.CancelPendingNotificationsInChannel(channelId);
+        }
+
+        /// <summary>
+        /// Cancel all scheduled notifications that belong to the given group.
+        /// Notifications will not be removed from the status bar if already delivered.
+        /// </summary>
+        /// <param name="group">The group, as set in <see cref="AndroidNotification.Group"/></param>
+        public static void CancelScheduledNotificationsInGroup(string group)
+        {
+            if (Initialize())
+                s_Jni.NotificationManager.CancelPendingNotificationsInGroup(group);
+        }
+
         /// <summary>
         /// Cancel a previously shown notification.
         /// The notification will be removed from the status bar.
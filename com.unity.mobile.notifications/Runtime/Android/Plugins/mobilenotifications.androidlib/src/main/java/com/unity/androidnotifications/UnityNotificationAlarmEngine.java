@@ -0,0 +1,22 @@
+package com.unity.androidnotifications;
+
+import android.content.Intent;
+
+// Registers alarms with the system for scheduled notifications, so that app gets woken up to send them.
+interface UnityNotificationAlarmEngine {
+    // sets alarm for given notification, replacing the one it may already have
+    void schedule(int id, long fireTime, long repeatInterval);
+
+    void cancel(int id);
+
+    boolean isScheduled(int id);
+
+    // applies changes to system alarms, engine may defer that to avoid a call to the system per change
+    void commit();
+
+    // handles broadcast of an alarm set by this engine, returns false if intent is not for this engine
+    boolean onAlarm(Intent intent);
+
+    // returns { notifications with system alarm, notifications waiting for one }
+    int[] getAlarmCounts();
+}
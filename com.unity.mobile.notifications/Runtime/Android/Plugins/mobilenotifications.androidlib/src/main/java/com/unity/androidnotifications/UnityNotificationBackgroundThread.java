@@ -1,25 +1,102 @@
 package com.unity.androidnotifications;
 
-import static com.unity.androidnotifications.UnityNotificationManager.KEY_FIRE_TIME;
-import static com.unity.androidnotifications.UnityNotificationManager.KEY_ID;
 import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
 
 import android.app.Notification;
-import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedTransferQueue;
-import java.util.Enumeration;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class UnityNotificationBackgroundThread extends Thread {
+    // lanes in order of priority
+    static final int LANE_IMMEDIATE = 0;  // cancels and notifications to be sent right away
+    static final int LANE_NORMAL = 1;
+    static final int LANE_BULK = 2;  // batches, bulk cancels and housekeeping
+    static final int LANE_COUNT = 3;
+
+    // what happens to schedules when queue is full
+    static final String QUEUE_POLICY_BLOCK = "block";  // caller waits for room
+    static final String QUEUE_POLICY_COALESCE = "coalesce";  // ones replacing a queued task for the same ID get in, others wait
+    static final String QUEUE_POLICY_REJECT = "reject";  // ones replacing a queued task for the same ID get in, others are refused
+
     private static abstract class Task {
-        // returns true if notificationIds was modified (needs to be saved)
-        public abstract boolean run(UnityNotificationManager manager, ConcurrentHashMap<Integer, Notification.Builder> notifications);
+        private static final int STATE_QUEUED = 0;
+        private static final int STATE_TAKEN = 1;
+        private static final int STATE_ELIDED = 2;
+
+        private AtomicInteger state = new AtomicInteger(STATE_QUEUED);
+        int lane;
+        long sequence;
+        long queuedAt;
+        boolean elidable;  // decided once when queued, so that it agrees with the lane
+
+        // returns true if scheduled notification IDs were modified (changes recorded in registry need to be saved)
+        public abstract boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications);
+
+        // tasks for a single notification run on worker for that ID, others on this thread once workers are idle
+        public int getNotificationId() {
+            return -1;
+        }
+
+        // how many requests the task carries out, counted towards queue depth
+        public int size() {
+            return 1;
+        }
+
+        // whether the task can be dropped when a later one for the same ID or cancel all is queued behind it, asked once when queued
+        public boolean canBeElided() {
+            return false;
+        }
+
+        // returns false if task was elided while queued
+        boolean take() {
+            return state.compareAndSet(STATE_QUEUED, STATE_TAKEN);
+        }
+
+        // returns false if task is already running or done
+        boolean elide() {
+            return state.compareAndSet(STATE_QUEUED, STATE_ELIDED);
+        }
+
+        boolean isElided() {
+            return state.get() == STATE_ELIDED;
+        }
+    }
+
+    // Work handed to a worker, runs before any work in lower priority lanes, in the order handed within a lane.
+    private static final class WorkerJob implements Runnable, Comparable<WorkerJob> {
+        private int lane;
+        private long sequence;
+        private Runnable action;
+
+        WorkerJob(int lane, long sequence, Runnable action) {
+            this.lane = lane;
+            this.sequence = sequence;
+            this.action = action;
+        }
+
+        @Override
+        public void run() {
+            action.run();
+        }
+
+        @Override
+        public int compareTo(WorkerJob other) {
+            int result = Integer.compare(lane, other.lane);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
     }
 
     private static class ScheduleNotificationTask extends Task {
@@ -36,24 +113,72 @@ public class UnityNotificationBackgroundThread extends Thread {
         }
 
         @Override
-        public boolean run(UnityNotificationManager manager, ConcurrentHashMap<Integer, Notification.Builder> notifications) {
-            String id = String.valueOf(notificationId);
-            Integer ID = Integer.valueOf(notificationId);
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            scheduleNotification(manager, notifications, notificationId, notificationBuilder, isCustomized);
+            return isNew;
+        }
+
+        @Override
+        public int getNotificationId() {
+            return notificationId;
+        }
+
+        // one to be sent right away is not superseded, cancel does not take down shown notification
+        @Override
+        public boolean canBeElided() {
+            long fireTime = notificationBuilder.getExtras().getLong(UnityNotificationManager.KEY_FIRE_TIME, -1);
+            return fireTime - Calendar.getInstance().getTime().getTime() >= 1000;
+        }
+
+        static void scheduleNotification(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications,
+                                         int notificationId, Notification.Builder notificationBuilder, boolean customized) {
             boolean didSchedule = false;
             try {
-                UnityNotificationManager.mUnityNotificationManager.performNotificationScheduling(notificationId, notificationBuilder, isCustomized);
+                manager.performNotificationScheduling(notificationId, notificationBuilder, customized);
                 didSchedule = true;
             } finally {
                 // if failed to schedule or replace, remove
                 if (!didSchedule) {
                     notifications.remove(notificationId);
+                    manager.getNotificationRegistry().remove(notificationId);
                     manager.cancelPendingNotificationIntent(notificationId);
-                    manager.deleteExpiredNotificationIntent(id);
+                    manager.deleteExpiredNotificationIntent(notificationId);
                 }
             }
+        }
+    }
+
+    // Saves the whole batch in one go, storage is committed and alarms armed once afterwards, together with the rest of the batch of tasks.
+    private static class ScheduleNotificationsTask extends Task {
+        private int[] notificationIds;
+        private Notification.Builder[] notificationBuilders;
+        private boolean isCustomized;
+        private boolean isNew;
 
+        public ScheduleNotificationsTask(int[] ids, Notification.Builder[] builders, boolean customized, boolean addedNew) {
+            notificationIds = ids;
+            notificationBuilders = builders;
+            isCustomized = customized;
+            isNew = addedNew;
+        }
+
+        @Override
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            for (int i = 0; i < notificationIds.length; ++i) {
+                // one that fails does not take down the rest of the batch
+                try {
+                    ScheduleNotificationTask.scheduleNotification(manager, notifications, notificationIds[i], notificationBuilders[i], isCustomized);
+                } catch (Exception e) {
+                    Log.e(TAG_UNITY, "Exception scheduling notification " + notificationIds[i], e);
+                }
+            }
             return isNew;
         }
+
+        @Override
+        public int size() {
+            return notificationIds.length;
+        }
     }
 
     private static class CancelNotificationTask extends Task {
@@ -64,33 +189,98 @@ public class UnityNotificationBackgroundThread extends Thread {
         }
 
         @Override
-        public boolean run(UnityNotificationManager manager, ConcurrentHashMap<Integer, Notification.Builder> notifications) {
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            return cancelNotification(manager, notifications, notificationId);
+        }
+
+        @Override
+        public int getNotificationId() {
+            return notificationId;
+        }
+
+        @Override
+        public boolean canBeElided() {
+            return true;
+        }
+
+        static boolean cancelNotification(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications, int notificationId) {
             manager.cancelPendingNotificationIntent(notificationId);
-            if (notifications.remove(notificationId) != null) {
-                manager.deleteExpiredNotificationIntent(String.valueOf(notificationId));
-                return true;
-            }
+            // notifications loaded from storage are only in registry until needed
+            boolean removed = manager.getNotificationRegistry().remove(notificationId);
+            removed |= notifications.remove(notificationId) != null;
+            if (removed)
+                manager.deleteExpiredNotificationIntent(notificationId);
+            return removed;
+        }
+    }
 
-            return false;
+    private static class CancelNotificationsTask extends Task {
+        private int[] notificationIds;
+        private String channelId;
+        private String group;
+
+        // either IDs, channel or group is given, the later two are resolved when task runs, after what was scheduled before
+        public CancelNotificationsTask(int[] ids, String channel, String grp) {
+            notificationIds = ids;
+            channelId = channel;
+            group = grp;
+        }
+
+        @Override
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            int[] ids = notificationIds;
+            if (channelId != null)
+                ids = manager.getNotificationRegistry().getIdsInChannel(channelId);
+            else if (group != null)
+                ids = manager.findNotificationIdsInGroup(group);
+
+            boolean removed = false;
+            for (int id : ids)
+                removed |= CancelNotificationTask.cancelNotification(manager, notifications, id);
+            return removed;
         }
     }
 
     private static class CancelAllNotificationsTask extends Task {
         @Override
-        public boolean run(UnityNotificationManager manager, ConcurrentHashMap<Integer, Notification.Builder> notifications) {
-            if (notifications.isEmpty())
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            UnityNotificationRegistry registry = manager.getNotificationRegistry();
+            if (notifications.isEmpty() && registry.size() == 0)
                 return false;
 
-            Enumeration<Integer> ids = notifications.keys();
-            while (ids.hasMoreElements()) {
-                Integer notificationId = ids.nextElement();
-                manager.cancelPendingNotificationIntent(notificationId);
-                manager.deleteExpiredNotificationIntent(String.valueOf(notificationId));
+            UnityNotificationIdSet cancelled = new UnityNotificationIdSet();
+            for (int id : notifications.keys()) {
+                cancelled.add(id);
+                cancelNotification(manager, id);
+            }
+            for (int id : registry.getIds()) {
+                if (cancelled.add(id))
+                    cancelNotification(manager, id);
             }
 
             notifications.clear();
+            registry.clear();
             return true;
         }
+
+        private static void cancelNotification(UnityNotificationManager manager, int notificationId) {
+            manager.cancelPendingNotificationIntent(notificationId);
+            manager.deleteExpiredNotificationIntent(notificationId);
+        }
+    }
+
+    private static class RearmAlarmsTask extends Task {
+        private String engine;
+
+        public RearmAlarmsTask(String eng) {
+            engine = eng;
+        }
+
+        @Override
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            manager.rearmAlarms(engine);
+            return false;
+        }
     }
 
     private static class HousekeepingTask extends Task {
@@ -101,68 +291,358 @@ public class UnityNotificationBackgroundThread extends Thread {
         }
 
         @Override
-        public boolean run(UnityNotificationManager manager, ConcurrentHashMap<Integer, Notification.Builder> notifications) {
-            HashSet<String> notificationIds = new HashSet<>();
-            Enumeration<Integer> ids = notifications.keys();
-            while (ids.hasMoreElements()) {
-                notificationIds.add(String.valueOf(ids.nextElement()));
-            }
-            thread.performHousekeeping(notificationIds);
+        public boolean run(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> notifications) {
+            thread.performHousekeeping();
             return false;
         }
     }
 
     private static final int TASKS_FOR_HOUSEKEEPING = 50;
     private LinkedTransferQueue<Task> mTasks = new LinkedTransferQueue();
-    private ConcurrentHashMap<Integer, Notification.Builder> mScheduledNotifications;
+    private UnityNotificationIntMap<Notification.Builder> mScheduledNotifications;
     private UnityNotificationManager mManager;
     private int mTasksSinceHousekeeping = TASKS_FOR_HOUSEKEEPING;  // we want hoursekeeping at the start
+    private ExecutorService[] mWorkers;
+    private AtomicBoolean mWorkersHaveChanges = new AtomicBoolean();
+    // last queued task for each ID, until it is taken
+    private UnityNotificationIntMap<Task> mQueuedById = new UnityNotificationIntMap<>();
+    // tasks handed to workers for each ID, in the order they were queued, guarded by itself
+    private UnityNotificationIntMap<ArrayDeque<Task>> mChains = new UnityNotificationIntMap<>();
+    private AtomicLong mElidedTasks = new AtomicLong();
+    private AtomicLong mCommits = new AtomicLong();
+    private AtomicLong mNextSequence = new AtomicLong();
+    // for each lane: tasks started, total and longest wait in milliseconds
+    private long[] mLaneWaits = new long[LANE_COUNT * 3];
+    private int mQueueLimit;  // 0 when unbounded
+    private String mQueuePolicy;
+    private AtomicInteger mQueueDepth = new AtomicInteger();
+    private AtomicInteger mQueueHighWatermark = new AtomicInteger();
+    private AtomicLong mRejectedTasks = new AtomicLong();
+    private Object mQueueSpace = new Object();
+    private int mWaitingProducers;  // guarded by mQueueSpace
 
-    public UnityNotificationBackgroundThread(UnityNotificationManager manager, ConcurrentHashMap<Integer, Notification.Builder> scheduledNotifications) {
+    public UnityNotificationBackgroundThread(UnityNotificationManager manager, UnityNotificationIntMap<Notification.Builder> scheduledNotifications) {
         mManager = manager;
         mScheduledNotifications = scheduledNotifications;
-        // rescheduling after reboot may have loaded, otherwise load here
-        if (mScheduledNotifications.size() == 0)
-            loadNotifications();
+        mWorkers = new ExecutorService[manager.getWorkerCount()];
+        for (int i = 0; i < mWorkers.length; ++i) {
+            final String name = "UnityNotificationWorker-" + i;
+            mWorkers[i] = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(),
+                (runnable) -> new Thread(runnable, name));
+        }
+        setQueueLimit(manager.getQueueLimit(), manager.getQueuePolicy());
+    }
+
+    void setQueueLimit(int limit, String policy) {
+        mQueueLimit = Math.max(0, limit);
+        mQueuePolicy = policy;
+    }
+
+    /* Queue holds a builder for every schedule, so it is bounded to keep memory in check.
+       Returns false if the schedules are refused, waits for room if policy says so.
+       Limit is soft, all schedules admitted at once are queued, as are cancels, which only free memory.
+    */
+    boolean admitNotifications(int count, int id) {
+        if (mQueueLimit == 0 || mQueueDepth.get() < mQueueLimit)
+            return true;
+        // replacing a queued one does not make queue any longer
+        if (id >= 0 && !QUEUE_POLICY_BLOCK.equals(mQueuePolicy) && mQueuedById.containsKey(id))
+            return true;
+        if (QUEUE_POLICY_REJECT.equals(mQueuePolicy)) {
+            mRejectedTasks.addAndGet(count);
+            return false;
+        }
+
+        synchronized (mQueueSpace) {
+            ++mWaitingProducers;
+            try {
+                while (mQueueDepth.get() >= mQueueLimit)
+                    mQueueSpace.wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                --mWaitingProducers;
+            }
+        }
+        return true;
+    }
+
+    // Returns { queued tasks, most ever queued, limit (0 when unbounded), schedules refused }.
+    long[] getQueueStatus() {
+        return new long[] { mQueueDepth.get(), mQueueHighWatermark.get(), mQueueLimit, mRejectedTasks.get() };
     }
 
     public void enqueueNotification(int id, Notification.Builder notificationBuilder, boolean customized, boolean addedNew) {
-        mTasks.add(new UnityNotificationBackgroundThread.ScheduleNotificationTask(id, notificationBuilder, customized, addedNew));
+        enqueueTaskForId(new ScheduleNotificationTask(id, notificationBuilder, customized, addedNew), LANE_NORMAL);
+    }
+
+    public void enqueueNotifications(int[] ids, Notification.Builder[] notificationBuilders, boolean customized, boolean addedNew) {
+        // runs here in order with other tasks, after workers finished what was queued before
+        enqueueTask(new ScheduleNotificationsTask(ids, notificationBuilders, customized, addedNew), LANE_BULK);
     }
 
     public void enqueueCancelNotification(int id) {
-        mTasks.add(new CancelNotificationTask(id));
+        enqueueTaskForId(new CancelNotificationTask(id), LANE_IMMEDIATE);
+    }
+
+    public void enqueueCancelNotifications(int[] ids) {
+        enqueueTask(new CancelNotificationsTask(ids, null, null), LANE_BULK);
     }
 
+    public void enqueueCancelNotificationsInChannel(String channelId) {
+        enqueueTask(new CancelNotificationsTask(null, channelId, null), LANE_BULK);
+    }
+
+    public void enqueueCancelNotificationsInGroup(String group) {
+        enqueueTask(new CancelNotificationsTask(null, null, group), LANE_BULK);
+    }
+
+    // after alarm engine changed, runs in order with schedules and cancels, so it sees registry as they left it
+    public void enqueueRearmAlarms(String engine) {
+        enqueueTask(new RearmAlarmsTask(engine), LANE_BULK);
+    }
+
+    // whatever is queued for individual IDs before cancel all has no effect after it
     public void enqueueCancelAllNotifications() {
-        mTasks.add(new CancelAllNotificationsTask());
+        synchronized (mQueuedById) {
+            for (int id : mQueuedById.keys())
+                elideTask(mQueuedById.get(id));
+            mQueuedById.clear();
+            enqueueTask(new CancelAllNotificationsTask(), LANE_IMMEDIATE);
+        }
+    }
+
+    // a task still queued for the same ID is superseded by this one
+    private void enqueueTaskForId(Task task, int lane) {
+        // what can't be elided has to be sent right away, so it goes first, before anything that could supersede it
+        task.elidable = task.canBeElided();
+        if (!task.elidable)
+            lane = LANE_IMMEDIATE;
+        synchronized (mQueuedById) {
+            Task previous = mQueuedById.put(task.getNotificationId(), task);
+            if (previous != null && elideTask(previous) && previous instanceof ScheduleNotificationTask && task instanceof ScheduleNotificationTask)
+                ((ScheduleNotificationTask)task).isNew |= ((ScheduleNotificationTask)previous).isNew;
+            enqueueTask(task, lane);
+        }
+    }
+
+    private void enqueueTask(Task task, int lane) {
+        task.lane = lane;
+        task.sequence = mNextSequence.getAndIncrement();
+        task.queuedAt = SystemClock.elapsedRealtime();
+        if (!(task instanceof HousekeepingTask)) {
+            int depth = mQueueDepth.addAndGet(task.size());
+            int highWatermark = mQueueHighWatermark.get();
+            while (depth > highWatermark && !mQueueHighWatermark.compareAndSet(highWatermark, depth))
+                highWatermark = mQueueHighWatermark.get();
+        }
+        mTasks.add(task);
+    }
+
+    // task was taken or elided
+    private void leaveQueue(Task task) {
+        if (task instanceof HousekeepingTask)
+            return;
+        mQueueDepth.addAndGet(-task.size());
+        synchronized (mQueueSpace) {
+            if (mWaitingProducers > 0)
+                mQueueSpace.notifyAll();
+        }
+    }
+
+    private void recordWait(Task task) {
+        long wait = SystemClock.elapsedRealtime() - task.queuedAt;
+        synchronized (mLaneWaits) {
+            int index = task.lane * 3;
+            ++mLaneWaits[index];
+            mLaneWaits[index + 1] += wait;
+            mLaneWaits[index + 2] = Math.max(mLaneWaits[index + 2], wait);
+        }
+    }
+
+    // Returns tasks started, total and longest wait in milliseconds, for each lane in order of priority.
+    long[] getLaneWaitTimes() {
+        synchronized (mLaneWaits) {
+            return mLaneWaits.clone();
+        }
+    }
+
+    private boolean elideTask(Task task) {
+        if (task == null || !task.elidable || !task.elide())
+            return false;
+        mElidedTasks.incrementAndGet();
+        leaveQueue(task);
+        return true;
+    }
+
+    // returns false if task was elided
+    private boolean takeTask(Task task) {
+        if (!task.take())
+            return false;
+        leaveQueue(task);
+        int id = task.getNotificationId();
+        if (id >= 0)
+            mQueuedById.remove(id, task);
+        return true;
+    }
+
+    // How many queued tasks were dropped, because later ones made them redundant.
+    long getElidedTaskCount() {
+        return mElidedTasks.get();
+    }
+
+    // How many times storage was committed, once per batch of tasks.
+    long getCommitCount() {
+        return mCommits.get();
+    }
+
+    private void commitNotificationStorage() {
+        mManager.commitNotificationStorage();
+        mCommits.incrementAndGet();
     }
 
     private void enqueueHousekeeping() {
-        mTasks.add(new HousekeepingTask(this));
+        enqueueTask(new HousekeepingTask(this), LANE_BULK);
     }
 
+    /* Tasks are executed in batches of everything queued at the time, storage is committed once per batch
+       instead of per task. When commit latency is configured, commit waits that long for more tasks to come,
+       so a burst of schedules arriving one by one is still committed together.
+       Tasks for a single notification are handed to workers by ID, each worker runs its tasks in order,
+       so schedule and cancel of the same ID keep their order, while a slow one does not hold up other IDs.
+       Everything else (bulk cancels, housekeeping, commits) waits for workers to finish what was handed to
+       them before, so it sees the same state as if all tasks ran on this thread.
+       Workers take tasks by lane: cancels and notifications due now before single schedules, those before
+       batches. Lanes only reorder different IDs: tasks handed over for an ID are chained, whichever job for
+       the ID a worker starts first runs the chain in order, so an urgent task takes the ones before it along.
+       Housekeeping is put off until no other tasks are left.
+    */
     @Override
     public void run() {
+        ArrayList<Task> batch = new ArrayList<>();
         boolean haveChanges = false;
+        long commitLatency = mManager.getCommitLatency();
+        long commitDeadline = -1;  // negative when there is nothing to commit
+        loadNotifications();
+        UnityNotificationRestartReceiver.resumeInterruptedRescheduling(mManager.getContext());
         while (true) {
             try {
-                Task task = mTasks.take();
-                haveChanges |= executeTask(mManager, task, mScheduledNotifications);
-                if (!(task instanceof HousekeepingTask))
-                    ++mTasksSinceHousekeeping;
-                if (mTasks.size() == 0 && haveChanges) {
-                    haveChanges = false;
-                    enqueueHousekeeping();
+                Task first;
+                if (commitDeadline < 0)
+                    first = mTasks.take();
+                else
+                    first = mTasks.poll(Math.max(0, commitDeadline - SystemClock.elapsedRealtime()), TimeUnit.MILLISECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    mTasks.drainTo(batch);
+                    Task housekeeping = null;
+                    for (Task task : batch) {
+                        if (task.isElided())
+                            continue;
+                        if (task instanceof HousekeepingTask) {
+                            housekeeping = task;
+                            continue;
+                        }
+                        haveChanges |= dispatchTask(task);
+                        ++mTasksSinceHousekeeping;
+                    }
+                    batch.clear();
+                    if (housekeeping != null) {
+                        if (mTasks.isEmpty())
+                            dispatchTask(housekeeping);
+                        else
+                            mTasks.add(housekeeping);
+                    }
+                    if (commitDeadline < 0)
+                        commitDeadline = SystemClock.elapsedRealtime() + commitLatency;
+                    haveChanges |= mWorkersHaveChanges.getAndSet(false);
+                    if (mTasks.isEmpty() && haveChanges) {
+                        // commit together with whatever housekeeping removes
+                        haveChanges = false;
+                        enqueueHousekeeping();
+                        continue;
+                    }
+                }
+
+                if (first == null || SystemClock.elapsedRealtime() >= commitDeadline) {
+                    awaitWorkers();
+                    commitNotificationStorage();
+                    commitDeadline = -1;
                 }
             } catch (InterruptedException e) {
-                if (mTasks.isEmpty())
+                if (mTasks.isEmpty()) {
+                    shutdownWorkers();
+                    commitNotificationStorage();
                     break;
+                }
+            }
+        }
+    }
+
+    // returns result of the task if it ran here, tasks handed to workers report changes when done
+    private boolean dispatchTask(Task task) throws InterruptedException {
+        int id = task.getNotificationId();
+        if (id < 0) {
+            awaitWorkers();
+            takeTask(task);
+            recordWait(task);
+            return executeTask(mManager, task, mScheduledNotifications);
+        }
+
+        ArrayDeque<Task> chain;
+        synchronized (mChains) {
+            chain = mChains.get(id);
+            if (chain == null) {
+                chain = new ArrayDeque<>();
+                mChains.put(id, chain);
+            }
+            chain.add(task);
+        }
+        final ArrayDeque<Task> tasks = chain;
+        mWorkers[(id & Integer.MAX_VALUE) % mWorkers.length].execute(new WorkerJob(task.lane, task.sequence, () -> runChain(id, tasks)));
+        return false;
+    }
+
+    // all jobs for an ID go to the same worker, so a chain is never run by two at once
+    private void runChain(int id, ArrayDeque<Task> chain) {
+        while (true) {
+            Task task;
+            synchronized (mChains) {
+                task = chain.poll();
+                if (task == null) {
+                    mChains.remove(id, chain);
+                    return;
+                }
             }
+            if (!takeTask(task))
+                continue;
+            recordWait(task);
+            if (executeTask(mManager, task, mScheduledNotifications))
+                mWorkersHaveChanges.set(true);
         }
     }
 
-    private boolean executeTask(UnityNotificationManager manager, Task task, ConcurrentHashMap<Integer, Notification.Builder> notifications) {
+    // marker comes after everything handed to workers so far, once it passes through each, all of that is done
+    private void awaitWorkers() throws InterruptedException {
+        CountDownLatch markers = new CountDownLatch(mWorkers.length);
+        long sequence = mNextSequence.getAndIncrement();
+        for (ExecutorService worker : mWorkers)
+            worker.execute(new WorkerJob(LANE_BULK, sequence, markers::countDown));
+        markers.await();
+    }
+
+    private void shutdownWorkers() {
+        for (ExecutorService worker : mWorkers)
+            worker.shutdown();
+        try {
+            for (ExecutorService worker : mWorkers)
+                worker.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Log.e(TAG_UNITY, "Interrupted waiting for notification workers", e);
+        }
+    }
+
+    private boolean executeTask(UnityNotificationManager manager, Task task, UnityNotificationIntMap<Notification.Builder> notifications) {
         try {
             return task.run(manager, notifications);
         } catch (Exception e) {
@@ -171,30 +651,30 @@ public class UnityNotificationBackgroundThread extends Thread {
         }
     }
 
-    private void performHousekeeping(Set<String> notificationIds) {
+    private void performHousekeeping() {
         // don't do housekeeping if last task we did was housekeeping (other=1)
         boolean performHousekeeping = mTasksSinceHousekeeping >= TASKS_FOR_HOUSEKEEPING;
         mTasksSinceHousekeeping = 0;
         if (performHousekeeping)
-            mManager.performNotificationHousekeeping(notificationIds);
-        mManager.saveScheduledNotificationIDs(notificationIds);
+            mManager.performNotificationHousekeeping(mManager.getNotificationRegistry().getIds());
     }
 
+    // Only the registry is loaded, notifications themselves are deserialized when needed.
     private void loadNotifications() {
-        List<Notification.Builder> notifications = mManager.loadSavedNotifications();
-        if (notifications == null || notifications.size() == 0)
-            return;
+        UnityNotificationRegistry registry = mManager.getNotificationRegistry();
         final long currentTime = Calendar.getInstance().getTime().getTime();
         boolean needHousekeeping = false;
-        for (Notification.Builder builder : notifications) {
-            Bundle extras = builder.getExtras();
-            int id = extras.getInt(KEY_ID, -1);
-            long fireTime = extras.getLong(KEY_FIRE_TIME, -1);
-            boolean inFuture = fireTime - currentTime > 0;
-            if (inFuture)
-                mScheduledNotifications.put(id, builder);
-            else
+        for (UnityNotificationRegistry.Entry entry : registry.getEntries()) {
+            // IDs saved by older versions don't know their schedule, it has to be read once
+            if (!entry.hasSchedule() && (entry = mManager.restoreRegistryEntry(entry.id)) == null) {
                 needHousekeeping = true;
+                continue;
+            }
+            if (!entry.isPending(currentTime)) {
+                // already delivered or expired, housekeeping only sees what is in registry, so delete it here
+                mManager.removeSavedNotification(entry.id);
+                needHousekeeping = true;
+            }
         }
 
         if (needHousekeeping)
@@ -0,0 +1,183 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.KEY_NOTIFICATION_ID;
+import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
+
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.TreeSet;
+
+class UnityNotificationBudgetAlarmEngine implements UnityNotificationAlarmEngine {
+    /*
+        Only the earliest notifications (up to the budget) have system alarms, same as with direct engine,
+        the rest wait in a set ordered by fire time and get their alarm as earlier ones go off or get cancelled.
+        The set is not saved, it is rebuilt from the registry of scheduled notifications when process starts,
+        which of the earliest ones already have alarms is then checked with the system. Sent one-shot notifications
+        are removed from the registry right away and the removal is committed once they are sent, otherwise a new
+        process would give them an alarm again, at a time already passed.
+        Changes are applied to system alarms on commit, only for notifications entering or leaving the budget.
+    */
+    private static final class Alarm {
+        final int id;
+        final long fireTime;
+        final long repeatInterval;
+
+        Alarm(int id, long fireTime, long repeatInterval) {
+            this.id = id;
+            this.fireTime = fireTime;
+            this.repeatInterval = repeatInterval;
+        }
+    }
+
+    private Context mContext;
+    private UnityNotificationDirectAlarmEngine mSystemAlarms;
+    private int mBudget;
+    private UnityNotificationIntMap<Alarm> mAlarms;
+    private TreeSet<Alarm> mOrdered;
+    // alarms registered with the system, may differ from the earliest ones until commit
+    private UnityNotificationIntMap<Alarm> mArmed;
+
+    UnityNotificationBudgetAlarmEngine(Context context, int budget) {
+        mContext = context;
+        mSystemAlarms = new UnityNotificationDirectAlarmEngine(context);
+        mBudget = Math.max(1, budget);
+    }
+
+    @Override
+    public synchronized void schedule(int id, long fireTime, long repeatInterval) {
+        load();
+        Alarm alarm = new Alarm(id, fireTime, repeatInterval);
+        Alarm old = mAlarms.put(id, alarm);
+        if (old != null)
+            mOrdered.remove(old);
+        mOrdered.add(alarm);
+    }
+
+    @Override
+    public synchronized void cancel(int id) {
+        load();
+        Alarm old = mAlarms.remove(id);
+        if (old != null)
+            mOrdered.remove(old);
+    }
+
+    @Override
+    public synchronized boolean isScheduled(int id) {
+        load();
+        return mAlarms.containsKey(id);
+    }
+
+    @Override
+    public synchronized void commit() {
+        load();
+        UnityNotificationIntMap<Alarm> armed = new UnityNotificationIntMap<>();
+        Iterator<Alarm> it = mOrdered.iterator();
+        for (int i = 0; i < mBudget && it.hasNext(); ++i) {
+            Alarm alarm = it.next();
+            armed.put(alarm.id, alarm);
+        }
+
+        int changes = 0;
+        try {
+            for (Alarm alarm : mArmed.values()) {
+                if (!armed.containsKey(alarm.id)) {
+                    mSystemAlarms.cancel(alarm.id);
+                    ++changes;
+                }
+            }
+            for (Alarm alarm : armed.values()) {
+                if (mArmed.get(alarm.id) != alarm) {
+                    mSystemAlarms.schedule(alarm.id, alarm.fireTime, alarm.repeatInterval);
+                    ++changes;
+                }
+            }
+        } catch (Exception e) {
+            // whatever was not applied is retried on next commit
+            Log.e(TAG_UNITY, "Failed to update alarms for scheduled notifications", e);
+            return;
+        }
+
+        mArmed = armed;
+        if (changes > 0)
+            Log.d(TAG_UNITY, "Updated " + changes + " alarms, " + mArmed.size() + " notifications armed, " + (mAlarms.size() - mArmed.size()) + " queued");
+    }
+
+    @Override
+    public boolean onAlarm(Intent intent) {
+        if (!intent.hasExtra(KEY_NOTIFICATION_ID))
+            return false;
+        int id = intent.getIntExtra(KEY_NOTIFICATION_ID, -1);
+        synchronized (this) {
+            load();
+            Alarm alarm = mAlarms.get(id);
+            if (alarm != null) {
+                mOrdered.remove(alarm);
+                if (alarm.repeatInterval > 0) {
+                    // system alarm keeps repeating, keep order of the next one
+                    Alarm next = new Alarm(id, nextRepetition(alarm.fireTime, alarm.repeatInterval, System.currentTimeMillis()), alarm.repeatInterval);
+                    mAlarms.put(id, next);
+                    mOrdered.add(next);
+                    mArmed.put(id, next);
+                } else {
+                    // used up, next one in line gets the alarm
+                    mAlarms.remove(id);
+                    mArmed.remove(id);
+                    mSystemAlarms.cancel(id);
+                    UnityNotificationManager.getNotificationManagerImpl(mContext).getNotificationRegistry().remove(id);
+                    commit();
+                }
+            }
+        }
+
+        // notification itself is sent by manager
+        return false;
+    }
+
+    @Override
+    public synchronized int[] getAlarmCounts() {
+        load();
+        return new int[] { mArmed.size(), mAlarms.size() - mArmed.size() };
+    }
+
+    private static long nextRepetition(long fireTime, long repeatInterval, long after) {
+        if (fireTime > after)
+            return fireTime;
+        return fireTime + ((after - fireTime) / repeatInterval + 1) * repeatInterval;
+    }
+
+    private void load() {
+        if (mAlarms != null)
+            return;
+        mAlarms = new UnityNotificationIntMap<>();
+        mArmed = new UnityNotificationIntMap<>();
+        mOrdered = new TreeSet<>((a, b) -> {
+            int result = Long.compare(a.fireTime, b.fireTime);
+            return result != 0 ? result : Integer.compare(a.id, b.id);
+        });
+        long now = System.currentTimeMillis();
+        UnityNotificationRegistry registry = UnityNotificationManager.getNotificationManagerImpl(mContext).getNotificationRegistry();
+        for (UnityNotificationRegistry.Entry entry : registry.getEntries()) {
+            // notifications of old versions get their schedule when loaded, have alarms of their own until then
+            if (!entry.hasSchedule())
+                continue;
+            long fireTime = entry.repeatInterval > 0 ? nextRepetition(entry.fireTime, entry.repeatInterval, now) : entry.fireTime;
+            Alarm alarm = new Alarm(entry.id, fireTime, entry.repeatInterval);
+            mAlarms.put(alarm.id, alarm);
+            mOrdered.add(alarm);
+        }
+
+        // alarms set by previous process stay with the system
+        ArrayList<Alarm> earliest = new ArrayList<>();
+        Iterator<Alarm> it = mOrdered.iterator();
+        for (int i = 0; i < mBudget && it.hasNext(); ++i)
+            earliest.add(it.next());
+        for (Alarm alarm : earliest) {
+            if (mSystemAlarms.isScheduled(alarm.id))
+                mArmed.put(alarm.id, alarm);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.unity.androidnotifications;
+
+import android.app.Notification;
+
+import java.util.TreeSet;
+
+class UnityNotificationBuilderCache {
+    /*
+        Builders of saved notifications that are due soonest, so that these don't have to be loaded when sent.
+        Holds at most given number of builders, when full the one due last is evicted, so the cache keeps
+        the ones that will be needed first. Evicted ones are loaded from storage when needed.
+        Size of a builder can't be measured, the size of its saved form is kept as an estimate.
+    */
+    private static final class Item {
+        final int id;
+        final long fireTime;
+        final Notification.Builder builder;
+        final int size;
+
+        Item(int id, long fireTime, Notification.Builder builder, int size) {
+            this.id = id;
+            this.fireTime = fireTime;
+            this.builder = builder;
+            this.size = size;
+        }
+    }
+
+    private int mCapacity;
+    private long mSize;
+    private UnityNotificationIntMap<Item> mItems = new UnityNotificationIntMap<>();
+    private TreeSet<Item> mOrdered = new TreeSet<>((a, b) -> {
+        int result = Long.compare(a.fireTime, b.fireTime);
+        return result != 0 ? result : Integer.compare(a.id, b.id);
+    });
+
+    UnityNotificationBuilderCache(int capacity) {
+        mCapacity = Math.max(0, capacity);
+    }
+
+    synchronized void put(int id, long fireTime, Notification.Builder builder, int size) {
+        remove(id);
+        if (mCapacity == 0)
+            return;
+        Item item = new Item(id, fireTime, builder, size);
+        mItems.put(id, item);
+        mOrdered.add(item);
+        mSize += size;
+        if (mOrdered.size() > mCapacity)
+            remove(mOrdered.last().id);
+    }
+
+    // returns null if builder is not cached
+    synchronized Notification.Builder get(int id) {
+        Item item = mItems.get(id);
+        return item == null ? null : item.builder;
+    }
+
+    synchronized void remove(int id) {
+        Item item = mItems.remove(id);
+        if (item != null) {
+            mOrdered.remove(item);
+            mSize -= item.size;
+        }
+    }
+
+    // evicts builders due last until at most keep are left, returns estimated bytes released
+    synchronized long trim(int keep) {
+        long size = mSize;
+        while (mOrdered.size() > Math.max(0, keep))
+            remove(mOrdered.last().id);
+        return size - mSize;
+    }
+
+    synchronized void clear() {
+        trim(0);
+    }
+
+    synchronized int capacity() {
+        return mCapacity;
+    }
+
+    synchronized int size() {
+        return mItems.size();
+    }
+}
@@ -0,0 +1,75 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.KEY_NOTIFICATION_ID;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+
+// One system alarm per notification, broadcast intent carries notification ID.
+class UnityNotificationDirectAlarmEngine implements UnityNotificationAlarmEngine {
+    private Context mContext;
+
+    UnityNotificationDirectAlarmEngine(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public void schedule(int id, long fireTime, long repeatInterval) {
+        Intent intent = buildNotificationIntent();
+        intent.putExtra(KEY_NOTIFICATION_ID, id);
+        PendingIntent broadcast = PendingIntent.getBroadcast(mContext, id, intent, PendingIntent.FLAG_UPDATE_CURRENT|PendingIntent.FLAG_IMMUTABLE);
+        AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+
+        if (repeatInterval <= 0) {
+            if (UnityNotificationManager.getNotificationManagerImpl(mContext).canScheduleExactAlarms()) {
+                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, fireTime, broadcast);
+            } else {
+                alarmManager.set(AlarmManager.RTC_WAKEUP, fireTime, broadcast);
+            }
+        } else {
+            alarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, fireTime, repeatInterval, broadcast);
+        }
+    }
+
+    @Override
+    public void cancel(int id) {
+        PendingIntent broadcast = PendingIntent.getBroadcast(mContext, id, buildNotificationIntent(), PendingIntent.FLAG_NO_CREATE|PendingIntent.FLAG_IMMUTABLE);
+
+        if (broadcast != null) {
+            AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(broadcast);
+            broadcast.cancel();
+        }
+    }
+
+    @Override
+    public boolean isScheduled(int id) {
+        // FLAG_NO_CREATE is set to return null if the described PendingIntent doesn't exist.
+        return null != PendingIntent.getBroadcast(mContext, id, buildNotificationIntent(), PendingIntent.FLAG_NO_CREATE|PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    @Override
+    public void commit() {
+        // alarms are set right away
+    }
+
+    @Override
+    public boolean onAlarm(Intent intent) {
+        // handled by manager, intent carries notification ID
+        return false;
+    }
+
+    @Override
+    public int[] getAlarmCounts() {
+        // every scheduled notification has its alarm
+        return new int[] { UnityNotificationManager.getNotificationManagerImpl(mContext).getNotificationRegistry().size(), 0 };
+    }
+
+    private Intent buildNotificationIntent() {
+        Intent intent = new Intent(mContext, UnityNotificationManager.class);
+        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
+        return intent;
+    }
+}
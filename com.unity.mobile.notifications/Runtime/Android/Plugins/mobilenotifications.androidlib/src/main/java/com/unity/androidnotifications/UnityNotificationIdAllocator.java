@@ -0,0 +1,98 @@
+package com.unity.androidnotifications;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.AsyncTask;
+
+class UnityNotificationIdAllocator {
+    /*
+        Generated notification IDs come from a counter that only goes up, wrapping around to the first ID
+        after Integer.MAX_VALUE. The counter is saved in blocks: before handing out IDs from a block, the end
+        of it is saved, so a new process continues after everything that could have been handed out before
+        without writing every ID. Counter only suggests IDs, caller skips those still in use, which is rare
+        as it takes a wrap-around or an explicit ID for that to happen.
+        Once half of a block is handed out, the next one is saved on a background thread, so callers only
+        wait for disk on the first ID, after wrap-around, or when they run through the block faster than the write.
+    */
+    static final String ID_ALLOCATOR_SHARED_PREFS = "UNITY_NOTIFICATIONS_ID_ALLOCATOR";
+    private static final String ID_ALLOCATOR_SHARED_PREFS_KEY = "next";
+    private static final int FIRST_ID = 1;
+    private static final int BLOCK_SIZE = 1024;
+
+    private SharedPreferences mPrefs;
+    private long mNext = -1;
+    private long mReservedUntil;
+    private boolean mReserving;
+
+    UnityNotificationIdAllocator(Context context) {
+        this(context.getSharedPreferences(ID_ALLOCATOR_SHARED_PREFS, Context.MODE_PRIVATE));
+    }
+
+    UnityNotificationIdAllocator(SharedPreferences prefs) {
+        mPrefs = prefs;
+    }
+
+    synchronized int next() {
+        if (mNext < 0) {
+            mNext = mPrefs.getInt(ID_ALLOCATOR_SHARED_PREFS_KEY, FIRST_ID);
+            mReservedUntil = mNext;
+        }
+        if (mNext >= mReservedUntil)
+            awaitReservation();
+        if (mNext > Integer.MAX_VALUE) {
+            mNext = FIRST_ID;
+            mReservedUntil = mNext;
+        }
+        if (mNext >= mReservedUntil) {
+            // written synchronously, as a process killed before asynchronous write completes would hand out the same IDs again
+            mReservedUntil = blockEnd(mNext);
+            save(mReservedUntil);
+        } else if (!mReserving && mReservedUntil - mNext <= BLOCK_SIZE / 2 && mReservedUntil <= Integer.MAX_VALUE) {
+            reserveInBackground(blockEnd(mReservedUntil));
+        }
+        return (int)mNext++;
+    }
+
+    private static long blockEnd(long start) {
+        return Math.min(start + BLOCK_SIZE, (long)Integer.MAX_VALUE + 1);
+    }
+
+    // only one write at a time, so that an older block can't be saved over a newer one
+    private void awaitReservation() {
+        boolean interrupted = false;
+        while (mReserving) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted)
+            Thread.currentThread().interrupt();
+    }
+
+    private void save(long until) {
+        // after the last block the saved counter starts over
+        int saved = until > Integer.MAX_VALUE ? FIRST_ID : (int)until;
+        mPrefs.edit().putInt(ID_ALLOCATOR_SHARED_PREFS_KEY, saved).commit();
+    }
+
+    private void reserveInBackground(long until) {
+        mReserving = true;
+        AsyncTask.execute(() -> {
+            boolean saved = false;
+            try {
+                save(until);
+                saved = true;
+            } finally {
+                synchronized (this) {
+                    // IDs are only handed out from blocks that are surely saved
+                    if (saved)
+                        mReservedUntil = Math.max(mReservedUntil, until);
+                    mReserving = false;
+                    notifyAll();
+                }
+            }
+        });
+    }
+}
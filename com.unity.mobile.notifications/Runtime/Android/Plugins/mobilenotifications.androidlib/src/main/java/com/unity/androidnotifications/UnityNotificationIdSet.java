@@ -0,0 +1,88 @@
+package com.unity.androidnotifications;
+
+class UnityNotificationIdSet {
+    /*
+        Set of notification IDs as a bitmap split into pages of 4096 IDs, only pages with IDs in them exist,
+        a page is released once its last ID is removed. IDs handed out by the allocator are consecutive,
+        so they share few pages. Pages are looked up by page number in a primitive map, so no boxing.
+    */
+    private static final int PAGE_SHIFT = 12;
+    private static final int PAGE_WORDS = (1 << PAGE_SHIFT) / 64;
+
+    private UnityNotificationIntMap<long[]> mPages = new UnityNotificationIntMap<>();
+    private int mSize;
+
+    boolean contains(int id) {
+        long[] page = mPages.get(id >>> PAGE_SHIFT);
+        return page != null && (page[wordIndex(id)] & bit(id)) != 0;
+    }
+
+    // returns true if ID was not there
+    boolean add(int id) {
+        long[] page = mPages.get(id >>> PAGE_SHIFT);
+        if (page == null) {
+            page = new long[PAGE_WORDS];
+            mPages.put(id >>> PAGE_SHIFT, page);
+        }
+        int word = wordIndex(id);
+        if ((page[word] & bit(id)) != 0)
+            return false;
+        page[word] |= bit(id);
+        ++mSize;
+        return true;
+    }
+
+    // returns true if ID was there
+    boolean remove(int id) {
+        long[] page = mPages.get(id >>> PAGE_SHIFT);
+        if (page == null)
+            return false;
+        int word = wordIndex(id);
+        if ((page[word] & bit(id)) == 0)
+            return false;
+        page[word] &= ~bit(id);
+        --mSize;
+        if (page[word] == 0 && isEmpty(page))
+            mPages.remove(id >>> PAGE_SHIFT);
+        return true;
+    }
+
+    void clear() {
+        mPages.clear();
+        mSize = 0;
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    int[] toArray() {
+        int[] ids = new int[mSize];
+        int count = 0;
+        for (int page : mPages.keys()) {
+            int first = page << PAGE_SHIFT;
+            long[] words = mPages.get(page);
+            for (int word = 0; word < words.length; ++word) {
+                for (long bits = words[word]; bits != 0; bits &= bits - 1)
+                    ids[count++] = first | (word << 6) | Long.numberOfTrailingZeros(bits);
+            }
+        }
+        return ids;
+    }
+
+    private static boolean isEmpty(long[] page) {
+        for (long word : page) {
+            if (word != 0)
+                return false;
+        }
+        return true;
+    }
+
+    private static int wordIndex(int id) {
+        return (id & ((1 << PAGE_SHIFT) - 1)) >>> 6;
+    }
+
+    private static long bit(int id) {
+        return 1L << (id & 63);
+    }
+}
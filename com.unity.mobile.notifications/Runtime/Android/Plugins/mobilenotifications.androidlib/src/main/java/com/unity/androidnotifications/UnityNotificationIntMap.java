@@ -0,0 +1,162 @@
+package com.unity.androidnotifications;
+
+import java.util.ArrayList;
+
+class UnityNotificationIntMap<V> {
+    /*
+        Map from notification ID to value, keys are kept as primitive ints, so no boxing on lookups.
+        Open addressing with linear probing, removal shifts following entries back instead of leaving
+        tombstones. All methods are synchronized, map is shared by the calling thread and the background one,
+        neither of them holds the lock for longer than a single operation.
+    */
+    private static final int MIN_CAPACITY = 16;
+
+    private int[] mKeys;
+    private Object[] mValues;
+    private int mSize;
+
+    UnityNotificationIntMap() {
+        mKeys = new int[MIN_CAPACITY];
+        mValues = new Object[MIN_CAPACITY];
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized V get(int key) {
+        int slot = find(key);
+        return slot < 0 ? null : (V)mValues[slot];
+    }
+
+    synchronized boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    // returns previous value, null if there was none
+    @SuppressWarnings("unchecked")
+    synchronized V put(int key, V value) {
+        int slot = find(key);
+        if (slot >= 0) {
+            V old = (V)mValues[slot];
+            mValues[slot] = value;
+            return old;
+        }
+        insert(key, value);
+        return null;
+    }
+
+    // returns current value if there is one, otherwise puts the given one and returns null
+    @SuppressWarnings("unchecked")
+    synchronized V putIfAbsent(int key, V value) {
+        int slot = find(key);
+        if (slot >= 0)
+            return (V)mValues[slot];
+        insert(key, value);
+        return null;
+    }
+
+    // returns removed value, null if there was none
+    @SuppressWarnings("unchecked")
+    synchronized V remove(int key) {
+        int slot = find(key);
+        if (slot < 0)
+            return null;
+        V old = (V)mValues[slot];
+        int mask = mKeys.length - 1;
+        // move back entries that probed past the freed slot
+        int hole = slot;
+        for (int i = (slot + 1) & mask; mValues[i] != null; i = (i + 1) & mask) {
+            int home = hash(mKeys[i]) & mask;
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                mKeys[hole] = mKeys[i];
+                mValues[hole] = mValues[i];
+                hole = i;
+            }
+        }
+        mValues[hole] = null;
+        --mSize;
+        return old;
+    }
+
+    // removes the entry only if key maps to this very value, returns true if removed
+    synchronized boolean remove(int key, V value) {
+        int slot = find(key);
+        if (slot < 0 || mValues[slot] != value)
+            return false;
+        remove(key);
+        return true;
+    }
+
+    synchronized void clear() {
+        mKeys = new int[MIN_CAPACITY];
+        mValues = new Object[MIN_CAPACITY];
+        mSize = 0;
+    }
+
+    synchronized int size() {
+        return mSize;
+    }
+
+    synchronized boolean isEmpty() {
+        return mSize == 0;
+    }
+
+    synchronized int[] keys() {
+        int[] keys = new int[mSize];
+        int count = 0;
+        for (int i = 0; i < mValues.length; ++i) {
+            if (mValues[i] != null)
+                keys[count++] = mKeys[i];
+        }
+        return keys;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized ArrayList<V> values() {
+        ArrayList<V> values = new ArrayList<>(mSize);
+        for (int i = 0; i < mValues.length; ++i) {
+            if (mValues[i] != null)
+                values.add((V)mValues[i]);
+        }
+        return values;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    // returns slot with the key, -1 if there is none; slots are free when value is null
+    private int find(int key) {
+        int mask = mKeys.length - 1;
+        for (int i = hash(key) & mask; mValues[i] != null; i = (i + 1) & mask) {
+            if (mKeys[i] == key)
+                return i;
+        }
+        return -1;
+    }
+
+    private void insert(int key, Object value) {
+        if (value == null)
+            throw new NullPointerException("Null values are not supported");
+        if (2 * (mSize + 1) > mKeys.length)
+            resize(mKeys.length * 2);
+        int mask = mKeys.length - 1;
+        int i = hash(key) & mask;
+        while (mValues[i] != null)
+            i = (i + 1) & mask;
+        mKeys[i] = key;
+        mValues[i] = value;
+        ++mSize;
+    }
+
+    private void resize(int capacity) {
+        int[] keys = mKeys;
+        Object[] values = mValues;
+        mKeys = new int[capacity];
+        mValues = new Object[capacity];
+        mSize = 0;
+        for (int i = 0; i < keys.length; ++i) {
+            if (values[i] != null)
+                insert(keys[i], values[i]);
+        }
+    }
+}
@@ -0,0 +1,708 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
+
+import android.content.Context;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+class UnityNotificationJournalStore implements UnityNotificationStore {
+    /*
+        All saved notifications are kept in a single append-only file.
+        The file starts with a four byte magic number followed by an integer version, after which records follow:
+          byte type (put or delete), int notification ID, int payload length, payload, int CRC32 of the record before it.
+        The last record for an ID wins. Once most of the file is taken by overwritten or deleted records,
+        the live ones are copied to a new file, which then replaces the old one.
+        If app gets killed in the middle of a write, the torn record at the end is dropped when opening.
+        Records are only flushed to disk on commit, so that a batch of changes costs a single sync.
+
+        Next to the journal a sorted index is kept, so that a single notification can be found without reading the others
+        (alarm firing when app is killed). Index starts with magic number and version, followed by the journal length it covers,
+        entry count and the entries sorted by ID: int notification ID, long payload offset, int payload length.
+        Records appended after the index was written are few and are read on top of it: index is rewritten after compaction
+        and, once enough records piled up, on commit and close, right after the journal itself is synced.
+
+        Payloads are raw bytes, read back as read-only slices of the mapped file, so loading does not copy them.
+        Reads of an open store only take the read lock, so they run alongside each other and only wait for a write
+        in progress, not for the ones queued after it. Sync on commit is done without holding the lock at all,
+        so that reads (notification being sent) don't wait for disk.
+    */
+    // magic stands for "Unity Mobile Notifications Journal"
+    private static final byte[] JOURNAL_MAGIC_NUMBER = new byte[] { 'U', 'M', 'N', 'J' };
+    private static final int JOURNAL_VERSION = 0;
+    private static final int JOURNAL_HEADER_SIZE = 8;
+    private static final byte RECORD_PUT = 1;
+    private static final byte RECORD_DELETE = 2;
+    private static final int RECORD_PAYLOAD_OFFSET = 9;
+    private static final int RECORD_OVERHEAD = RECORD_PAYLOAD_OFFSET + 4;
+    private static final long COMPACTION_MIN_SIZE = 64 * 1024;
+
+    // magic stands for "Unity Mobile Notifications indeX"
+    private static final byte[] INDEX_MAGIC_NUMBER = new byte[] { 'U', 'M', 'N', 'X' };
+    private static final int INDEX_VERSION = 0;
+    private static final int INDEX_HEADER_SIZE = 20;
+    private static final int INDEX_ENTRY_SIZE = 16;
+    private static final int INDEX_REFRESH_RECORDS = 64;
+
+    static final String JOURNAL_FILE_NAME = "unity_notifications.journal";
+
+    private static class Entry {
+        long offset;  // of the payload, not the record; negative for deleted
+        int length;
+
+        Entry(long offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private File mFile;
+    private File mIndexFile;
+    private UnityNotificationPrefsStore mLegacyStore;
+    private UnityNotificationRegistry mLegacyRegistry;
+    private final ReentrantReadWriteLock mLock = new ReentrantReadWriteLock();
+    private FileChannel mChannel;
+    // mapped lazily by readers, any mapping covering the record will do
+    private volatile MappedByteBuffer mData;
+    // until something is written, lookups go to index and records appended after it
+    private ByteBuffer mIndex;
+    private int mIndexCount;
+    private UnityNotificationIntMap<Entry> mTail;
+    // all live entries, loaded for writing
+    private UnityNotificationIntMap<Entry> mEntries;
+    private long mLiveBytes;
+    private int mRecordsSinceIndex;
+    private boolean mUncommitted;
+
+    UnityNotificationJournalStore(Context context, UnityNotificationRegistry registry) {
+        this(new File(context.getNoBackupFilesDir(), JOURNAL_FILE_NAME), new UnityNotificationPrefsStore(context), registry);
+    }
+
+    // Legacy store is optional, if given, notifications from it are moved to the new file when it is created.
+    // Only the ones in registry (which took over IDs old versions had scheduled) are moved, other files are leftovers.
+    UnityNotificationJournalStore(File file, UnityNotificationPrefsStore legacyStore, UnityNotificationRegistry registry) {
+        mFile = file;
+        mIndexFile = new File(file.getPath() + ".index");
+        mLegacyStore = legacyStore;
+        mLegacyRegistry = registry;
+    }
+
+    @Override
+    public void put(int id, ByteBuffer data) {
+        mLock.writeLock().lock();
+        try {
+            if (!open())
+                return;
+            loadEntries();
+            long offset = -1;
+            try {
+                offset = mChannel.size();
+                writeRecord(mChannel, offset, RECORD_PUT, id, data);
+                mUncommitted = true;
+            } catch (IOException e) {
+                Log.e(TAG_UNITY, "Failed to save notification", e);
+                discardPartialRecord(offset);
+                return;
+            }
+
+            int length = data.remaining();
+            Entry old = mEntries.put(id, new Entry(offset + RECORD_PAYLOAD_OFFSET, length));
+            if (old != null)
+                mLiveBytes -= RECORD_OVERHEAD + old.length;
+            mLiveBytes += RECORD_OVERHEAD + length;
+            ++mRecordsSinceIndex;
+            compactIfNeeded();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public ByteBuffer get(int id) {
+        mLock.readLock().lock();
+        try {
+            // opening and rebuilding index change the state, these are done below with write lock
+            if (mChannel != null) {
+                Entry entry = findEntry(id);
+                if (entry == null)
+                    return null;
+                ByteBuffer data = readPayload(id, entry);
+                if (data != null || mEntries != null)
+                    return data;
+            }
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to read saved notification", e);
+            return null;
+        } finally {
+            mLock.readLock().unlock();
+        }
+
+        mLock.writeLock().lock();
+        try {
+            return getLocked(id);
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private ByteBuffer getLocked(int id) {
+        if (!open())
+            return null;
+        Entry entry = findEntry(id);
+        if (entry == null)
+            return null;
+        try {
+            ByteBuffer data = readPayload(id, entry);
+            if (data != null || mEntries != null)
+                return data;
+
+            // index does not match journal, forget it and read everything
+            Log.w(TAG_UNITY, "Notification index is out of date, rebuilding");
+            mIndexFile.delete();
+            closeLocked();
+            if (!open() || (entry = findEntry(id)) == null)
+                return null;
+            return readPayload(id, entry);
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to read saved notification", e);
+            return null;
+        }
+    }
+
+    @Override
+    public void delete(int id) {
+        mLock.writeLock().lock();
+        try {
+            if (!open() || findEntry(id) == null)
+                return;
+            loadEntries();
+            long offset = -1;
+            try {
+                offset = mChannel.size();
+                writeRecord(mChannel, offset, RECORD_DELETE, id, null);
+                mUncommitted = true;
+            } catch (IOException e) {
+                Log.e(TAG_UNITY, "Failed to delete saved notification", e);
+                discardPartialRecord(offset);
+                return;
+            }
+
+            Entry old = mEntries.remove(id);
+            mLiveBytes -= RECORD_OVERHEAD + old.length;
+            ++mRecordsSinceIndex;
+            compactIfNeeded();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public int[] getIds() {
+        // loads all entries, which replaces the index
+        mLock.writeLock().lock();
+        try {
+            if (!open())
+                return new int[0];
+            loadEntries();
+            return mEntries.keys();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void commit() {
+        FileChannel channel;
+        mLock.writeLock().lock();
+        try {
+            if (mChannel == null || !mUncommitted)
+                return;
+            channel = mChannel;
+            // records written while syncing mark it uncommitted again
+            mUncommitted = false;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+
+        boolean synced = false;
+        try {
+            channel.force(false);
+            synced = true;
+        } catch (ClosedChannelException e) {
+            // closed or replaced meanwhile, sync the file through whatever channel is open now
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to commit notification journal", e);
+        }
+
+        mLock.writeLock().lock();
+        try {
+            if (!synced && mChannel != channel)
+                synced = forceLocked();
+            if (synced)
+                refreshIndexIfNeeded();
+            else
+                mUncommitted = true;
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    // index is only rewritten once enough records are read on top of it, so that most commits cost a single sync
+    private void refreshIndexIfNeeded() {
+        if (mChannel == null || mEntries == null || mRecordsSinceIndex < INDEX_REFRESH_RECORDS)
+            return;
+        try {
+            writeIndex();
+        } catch (IOException e) {
+            // previous index still covers the beginning of the journal, the rest is read on top of it
+            Log.e(TAG_UNITY, "Failed to write notification index", e);
+        }
+    }
+
+    private boolean forceLocked() {
+        try {
+            if (open()) {
+                mChannel.force(false);
+                return true;
+            }
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to commit notification journal", e);
+        }
+        return false;
+    }
+
+    void close() {
+        mLock.writeLock().lock();
+        try {
+            closeLocked();
+        } finally {
+            mLock.writeLock().unlock();
+        }
+    }
+
+    private void closeLocked() {
+        if (mChannel != null && mUncommitted) {
+            try {
+                mChannel.force(false);
+                mUncommitted = false;
+            } catch (IOException e) {
+                Log.e(TAG_UNITY, "Failed to commit notification journal", e);
+            }
+        }
+        if (!mUncommitted)
+            refreshIndexIfNeeded();
+        if (mChannel != null) {
+            try {
+                mChannel.close();
+            } catch (IOException e) {
+                Log.e(TAG_UNITY, "Failed to close notification journal", e);
+            }
+            mChannel = null;
+        }
+        mData = null;
+        mIndex = null;
+        mTail = null;
+        mEntries = null;
+        mLiveBytes = 0;
+        mRecordsSinceIndex = 0;
+        mUncommitted = false;
+    }
+
+    private boolean open() {
+        if (mChannel != null)
+            return true;
+        try {
+            if (!mFile.exists())
+                create();
+            mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+            if (!openIndex()) {
+                mEntries = new UnityNotificationIntMap<>();
+                mRecordsSinceIndex = replay(JOURNAL_HEADER_SIZE, mEntries, false);
+                if (mRecordsSinceIndex > 0)
+                    writeIndex();
+            }
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to open notification journal", e);
+            close();
+            return false;
+        }
+    }
+
+    // new file is written to the side and renamed, so that crash during migration simply makes it happen again
+    private void create() throws IOException {
+        mIndexFile.delete();
+        File tmp = new File(mFile.getPath() + ".tmp");
+        int[] legacyIds = mLegacyStore == null ? new int[0] : mLegacyStore.findSavedIds();
+        int migrated = 0;
+        try (FileChannel channel = new RandomAccessFile(tmp, "rw").getChannel()) {
+            channel.truncate(0);
+            long offset = writeHeader(channel);
+            for (int id : legacyIds) {
+                if (mLegacyRegistry == null || !mLegacyRegistry.contains(id))
+                    continue;
+                ByteBuffer data = mLegacyStore.get(id);
+                if (data != null) {
+                    offset += writeRecord(channel, offset, RECORD_PUT, id, data);
+                    ++migrated;
+                }
+            }
+            channel.force(false);
+        }
+
+        if (!tmp.renameTo(mFile))
+            throw new IOException("Failed to create notification journal " + mFile);
+        for (int id : legacyIds)
+            mLegacyStore.deleteFile(id);
+        if (legacyIds.length > 0)
+            Log.d(TAG_UNITY, "Migrated " + migrated + " saved notifications to journal, deleted " + (legacyIds.length - migrated) + " leftover files");
+    }
+
+    private boolean openIndex() throws IOException {
+        if (!mIndexFile.exists())
+            return false;
+        try (FileChannel channel = new RandomAccessFile(mIndexFile, "r").getChannel()) {
+            long size = channel.size();
+            if (size < INDEX_HEADER_SIZE)
+                return false;
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            for (int i = 0; i < INDEX_MAGIC_NUMBER.length; ++i) {
+                if (index.get(i) != INDEX_MAGIC_NUMBER[i])
+                    return false;
+            }
+            int version = index.getInt(4);
+            long coveredLength = index.getLong(8);
+            int count = index.getInt(16);
+            if (version < 0 || version > INDEX_VERSION || count < 0 || size != INDEX_HEADER_SIZE + (long)count * INDEX_ENTRY_SIZE)
+                return false;
+            if (coveredLength < JOURNAL_HEADER_SIZE || coveredLength > mChannel.size())
+                return false;
+
+            mIndex = index;
+            mIndexCount = count;
+            mTail = new UnityNotificationIntMap<>();
+            mRecordsSinceIndex = replay(coveredLength, mTail, true);
+            return true;
+        }
+    }
+
+    private Entry findEntry(int id) {
+        if (mEntries != null)
+            return mEntries.get(id);
+        Entry entry = mTail.get(id);
+        if (entry != null)
+            return entry.offset < 0 ? null : entry;
+
+        int low = 0, high = mIndexCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int position = INDEX_HEADER_SIZE + mid * INDEX_ENTRY_SIZE;
+            int midId = mIndex.getInt(position);
+            if (midId < id)
+                low = mid + 1;
+            else if (midId > id)
+                high = mid - 1;
+            else
+                return new Entry(mIndex.getLong(position + 4), mIndex.getInt(position + 12));
+        }
+
+        return null;
+    }
+
+    // writing needs to know about all notifications, load them from index
+    private void loadEntries() {
+        if (mEntries != null)
+            return;
+        UnityNotificationIntMap<Entry> entries = new UnityNotificationIntMap<>();
+        for (int i = 0; i < mIndexCount; ++i) {
+            int position = INDEX_HEADER_SIZE + i * INDEX_ENTRY_SIZE;
+            entries.put(mIndex.getInt(position), new Entry(mIndex.getLong(position + 4), mIndex.getInt(position + 12)));
+        }
+        for (int id : mTail.keys()) {
+            Entry entry = mTail.get(id);
+            if (entry.offset < 0)
+                entries.remove(id);
+            else
+                entries.put(id, entry);
+        }
+
+        mEntries = entries;
+        mLiveBytes = 0;
+        for (Entry entry : entries.values())
+            mLiveBytes += RECORD_OVERHEAD + entry.length;
+        mIndex = null;
+        mTail = null;
+    }
+
+    // Reads records starting at given offset into entries, deletes are kept as negative offsets if requested.
+    // Returns the number of records read.
+    private int replay(long offset, UnityNotificationIntMap<Entry> entries, boolean keepDeletes) throws IOException {
+        if (!readHeader(mChannel)) {
+            Log.e(TAG_UNITY, "Notification journal is corrupted, discarding saved notifications");
+            mIndexFile.delete();
+            mChannel.truncate(0);
+            writeHeader(mChannel);
+            return 0;
+        }
+
+        long size = mChannel.size();
+        mChannel.position(offset);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(mChannel)));
+        int records = 0;
+        CRC32 crc = new CRC32();
+        byte[] buffer = new byte[256];
+        try {
+            while (offset < size) {
+                byte type = in.readByte();
+                int id = in.readInt();
+                int length = in.readInt();
+                if ((type != RECORD_PUT && type != RECORD_DELETE) || length < 0 || length > size - offset - RECORD_OVERHEAD)
+                    break;
+                if (buffer.length < length)
+                    buffer = new byte[length];
+                in.readFully(buffer, 0, length);
+                crc.reset();
+                updateRecordChecksum(crc, type, id, length);
+                crc.update(buffer, 0, length);
+                if (in.readInt() != (int)crc.getValue())
+                    break;
+
+                Entry old;
+                if (type == RECORD_PUT) {
+                    old = entries.put(id, new Entry(offset + RECORD_PAYLOAD_OFFSET, length));
+                    mLiveBytes += RECORD_OVERHEAD + length;
+                } else if (keepDeletes) {
+                    old = entries.put(id, new Entry(-1, 0));
+                } else {
+                    old = entries.remove(id);
+                }
+                if (old != null && old.offset >= 0)
+                    mLiveBytes -= RECORD_OVERHEAD + old.length;
+                offset += RECORD_OVERHEAD + length;
+                ++records;
+            }
+        } catch (EOFException e) {
+            // torn record at the end, dropped below
+        }
+
+        if (offset < size) {
+            Log.w(TAG_UNITY, "Dropping incomplete records at the end of notification journal");
+            mChannel.truncate(offset);
+        }
+
+        return records;
+    }
+
+    private void writeIndex() throws IOException {
+        // index must not get to disk before the records it points to
+        if (mUncommitted) {
+            mChannel.force(false);
+            mUncommitted = false;
+        }
+
+        int[] ids = mEntries.keys();
+        Arrays.sort(ids);
+
+        ByteBuffer index = ByteBuffer.allocate(INDEX_HEADER_SIZE + ids.length * INDEX_ENTRY_SIZE);
+        index.put(INDEX_MAGIC_NUMBER);
+        index.putInt(INDEX_VERSION);
+        index.putLong(mChannel.size());
+        index.putInt(ids.length);
+        for (int id : ids) {
+            Entry entry = mEntries.get(id);
+            index.putInt(id);
+            index.putLong(entry.offset);
+            index.putInt(entry.length);
+        }
+        index.flip();
+
+        File tmp = new File(mIndexFile.getPath() + ".tmp");
+        try (FileChannel channel = new RandomAccessFile(tmp, "rw").getChannel()) {
+            channel.truncate(0);
+            writeFully(channel, index, 0);
+            channel.force(false);
+        }
+        if (!tmp.renameTo(mIndexFile)) {
+            tmp.delete();
+            throw new IOException("Failed to write notification index " + mIndexFile);
+        }
+        mRecordsSinceIndex = 0;
+    }
+
+    private void compactIfNeeded() {
+        try {
+            long size = mChannel.size();
+            if (size >= COMPACTION_MIN_SIZE && size >= 2 * (JOURNAL_HEADER_SIZE + mLiveBytes))
+                compact();
+        } catch (IOException e) {
+            // old file is still intact, will be read again on next access
+            Log.e(TAG_UNITY, "Failed to compact notification journal", e);
+            close();
+        }
+    }
+
+    private void compact() throws IOException {
+        File tmp = new File(mFile.getPath() + ".tmp");
+        UnityNotificationIntMap<Entry> entries = new UnityNotificationIntMap<>();
+        try (FileChannel channel = new RandomAccessFile(tmp, "rw").getChannel()) {
+            channel.truncate(0);
+            long offset = writeHeader(channel);
+            for (int id : mEntries.keys()) {
+                ByteBuffer data = readPayload(id, mEntries.get(id));
+                if (data == null)
+                    throw new IOException("Notification journal is corrupted");
+                entries.put(id, new Entry(offset + RECORD_PAYLOAD_OFFSET, data.remaining()));
+                offset += writeRecord(channel, offset, RECORD_PUT, id, data);
+            }
+            channel.force(false);
+        }
+
+        // old index would point to wrong places in the new file
+        mIndexFile.delete();
+        mChannel.close();
+        mChannel = null;
+        mData = null;
+        if (!tmp.renameTo(mFile)) {
+            tmp.delete();
+            throw new IOException("Failed to replace notification journal " + mFile);
+        }
+        mChannel = new RandomAccessFile(mFile, "rw").getChannel();
+        mEntries = entries;
+        mUncommitted = false;
+        writeIndex();
+    }
+
+    // after a failed write the file may end with garbage, which would hide any records written after it
+    private void discardPartialRecord(long offset) {
+        if (mChannel == null)
+            return;
+        try {
+            if (offset >= JOURNAL_HEADER_SIZE && mChannel.size() > offset)
+                mChannel.truncate(offset);
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to recover notification journal", e);
+            close();
+        }
+    }
+
+    // returns payload as a slice of memory mapping, null if record at given place is not what index says
+    private ByteBuffer readPayload(int id, Entry entry) throws IOException {
+        long recordStart = entry.offset - RECORD_PAYLOAD_OFFSET;
+        long recordEnd = entry.offset + entry.length + 4;
+        if (recordStart < JOURNAL_HEADER_SIZE || recordEnd > mChannel.size())
+            return null;
+        MappedByteBuffer mapped = mData;
+        if (mapped == null || mapped.capacity() < recordEnd)
+            mData = mapped = mChannel.map(FileChannel.MapMode.READ_ONLY, 0, mChannel.size());
+
+        ByteBuffer record = mapped.duplicate();
+        record.position((int)recordStart);
+        if (record.get() != RECORD_PUT || record.getInt() != id || record.getInt() != entry.length)
+            return null;
+        ByteBuffer data = record.slice();
+        data.limit(entry.length);
+        CRC32 crc = new CRC32();
+        updateRecordChecksum(crc, RECORD_PUT, id, entry.length);
+        updateChecksum(crc, data);
+        record.position(record.position() + entry.length);
+        if (record.getInt() != (int)crc.getValue())
+            return null;
+        return data.asReadOnlyBuffer();
+    }
+
+    private static long writeHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        header.put(JOURNAL_MAGIC_NUMBER);
+        header.putInt(JOURNAL_VERSION);
+        header.flip();
+        writeFully(channel, header, 0);
+        return JOURNAL_HEADER_SIZE;
+    }
+
+    private static boolean readHeader(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(JOURNAL_HEADER_SIZE);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0)
+                return false;
+        }
+        for (int i = 0; i < JOURNAL_MAGIC_NUMBER.length; ++i) {
+            if (header.get(i) != JOURNAL_MAGIC_NUMBER[i])
+                return false;
+        }
+        int version = header.getInt(JOURNAL_MAGIC_NUMBER.length);
+        return version >= 0 && version <= JOURNAL_VERSION;
+    }
+
+    // returns the size of the written record, payload is written straight from the given buffer, which is not modified
+    private static int writeRecord(FileChannel channel, long offset, byte type, int id, ByteBuffer data) throws IOException {
+        int length = data == null ? 0 : data.remaining();
+        ByteBuffer header = ByteBuffer.allocate(RECORD_PAYLOAD_OFFSET);
+        header.put(type);
+        header.putInt(id);
+        header.putInt(length);
+        header.flip();
+        CRC32 crc = new CRC32();
+        updateRecordChecksum(crc, type, id, length);
+        if (length > 0)
+            updateChecksum(crc, data);
+        ByteBuffer checksum = ByteBuffer.allocate(4);
+        checksum.putInt((int)crc.getValue());
+        checksum.flip();
+
+        ByteBuffer[] record = length > 0
+            ? new ByteBuffer[] { header, data.duplicate(), checksum }
+            : new ByteBuffer[] { header, checksum };
+        channel.position(offset);
+        while (checksum.hasRemaining())
+            channel.write(record);
+        return RECORD_OVERHEAD + length;
+    }
+
+    private static void updateChecksum(CRC32 crc, ByteBuffer data) {
+        if (data.hasArray()) {
+            crc.update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            crc.update(data.duplicate());
+        } else {
+            ByteBuffer view = data.duplicate();
+            byte[] chunk = new byte[Math.min(4096, view.remaining())];
+            while (view.hasRemaining()) {
+                int length = Math.min(chunk.length, view.remaining());
+                view.get(chunk, 0, length);
+                crc.update(chunk, 0, length);
+            }
+        }
+    }
+
+    private static void updateRecordChecksum(CRC32 crc, byte type, int id, int length) {
+        crc.update(type);
+        crc.update(id >>> 24);
+        crc.update(id >>> 16);
+        crc.update(id >>> 8);
+        crc.update(id);
+        crc.update(length >>> 24);
+        crc.update(length >>> 16);
+        crc.update(length >>> 8);
+        crc.update(length);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long offset) throws IOException {
+        while (buffer.hasRemaining())
+            offset += channel.write(buffer, offset);
+    }
+}
@@ -0,0 +1,21 @@
+package com.unity.androidnotifications;
+
+class UnityNotificationLockStripes {
+    /*
+        Locks for notification IDs, a fixed number of them shared by all IDs, so that changes to the same notification
+        are serialized, while changes to different ones mostly are not. Store and registry guard themselves,
+        these only keep the steps of a single change together (saved data and its registry entry).
+    */
+    private Object[] mLocks;
+
+    UnityNotificationLockStripes(int count) {
+        mLocks = new Object[count];
+        for (int i = 0; i < count; ++i)
+            mLocks[i] = new Object();
+    }
+
+    Object forId(int id) {
+        int h = id * 0x9E3779B9;
+        return mLocks[((h ^ (h >>> 16)) & Integer.MAX_VALUE) % mLocks.length];
+    }
+}
@@ -11,6 +11,7 @@ import android.app.NotificationChannelGroup;
 import android.app.NotificationManager;
 import android.app.PendingIntent;
 import android.content.BroadcastReceiver;
+import android.content.ComponentCallbacks2;
 import android.content.Context;
 import android.content.Intent;
 import android.content.pm.PackageManager;
@@ -22,6 +23,7 @@ import android.net.Uri;
 import android.os.AsyncTask;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.provider.Settings;
 import android.service.notification.StatusBarNotification;
 import android.util.Log;
@@ -32,14 +34,12 @@ import static android.app.Notification.VISIBILITY_PUBLIC;
 
 import java.io.InputStream;
 import java.lang.Integer;
+import java.nio.ByteBuffer;
 import java.util.Calendar;
-import java.util.Random;
 import java.util.Set;
 import java.util.HashSet;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.unity3d.player.UnityPlayer;
 
@@ -50,10 +50,25 @@ public class UnityNotificationManager extends BroadcastReceiver {
     private Activity mActivity = null;
     private Class mOpenActivity = null;
     private UnityNotificationBackgroundThread mBackgroundThread;
-    private Random mRandom;
-    private ConcurrentHashMap<Integer, Notification.Builder> mScheduledNotifications;
+    // builders of notifications not saved yet (or failed to save), saved ones are loaded on demand,
+    // registry and store keep only compact records for them
+    private UnityNotificationIntMap<Notification.Builder> mScheduledNotifications;
+    // files are per process, manager may get recreated (rescheduling after reboot)
+    private static UnityNotificationStore sNotificationStore;
+    private static UnityNotificationRegistry sNotificationRegistry;
+    private static UnityNotificationStringDictionary sStringDictionary;
+    private static UnityNotificationIdAllocator sIdAllocator;
+    private static boolean sMemoryCallbacksRegistered;
+    private static final UnityNotificationLockStripes sIdLocks = new UnityNotificationLockStripes(32);
+    private static final UnityNotificationStateTracker sNotificationStates = new UnityNotificationStateTracker();
+    private static UnityNotificationAlarmEngine sAlarmEngine;
     private NotificationCallback mNotificationCallback;
     private int mExactSchedulingSetting = -1;
+    private int mCommitLatencySetting = -1;
+    private int mWorkerCountSetting = -1;
+    private int mQueueLimitSetting = -1;
+    // saved notifications due soonest, so these are not loaded when sent
+    private UnityNotificationBuilderCache mBuilderCache;
 
     private static final int PERMISSION_STATUS_ALLOWED = 1;
     private static final int PERMISSION_STATUS_DENIED = 2;
@@ -81,6 +96,16 @@ public class UnityNotificationManager extends BroadcastReceiver {
     static final String NOTIFICATION_CHANNELS_SHARED_PREFS_KEY = "ChannelIDs";
     static final String NOTIFICATION_IDS_SHARED_PREFS = "UNITY_STORED_NOTIFICATION_IDS";
     static final String NOTIFICATION_IDS_SHARED_PREFS_KEY = "UNITY_NOTIFICATION_IDS";
+    private static final int DEFAULT_COMMIT_LATENCY_MS = 100;
+    private static final int DEFAULT_WORKER_COUNT = 2;
+    private static final int DEFAULT_QUEUE_LIMIT = 1000;
+    private static final int DEFAULT_BUILDER_CACHE_SIZE = 16;
+    private static final String ALARM_ENGINE_SHARED_PREFS = "UNITY_NOTIFICATIONS_ALARM_ENGINE";
+    private static final String ALARM_ENGINE_SHARED_PREFS_KEY = "engine";
+    static final String ALARM_ENGINE_DIRECT = "direct";
+    static final String ALARM_ENGINE_MASTER = "master";
+    static final String ALARM_ENGINE_BUDGET = "budget";
+    private static final int DEFAULT_ALARM_BUDGET = 50;
 
     private void initialize(Activity activity, NotificationCallback notificationCallback) {
         // always assign these, as callback here is always new, activity and context might be
@@ -88,11 +113,14 @@ public class UnityNotificationManager extends BroadcastReceiver {
         mActivity = activity;
         mNotificationCallback = notificationCallback;
         if (mScheduledNotifications == null)
-            mScheduledNotifications = new ConcurrentHashMap<>();
+            mScheduledNotifications = new UnityNotificationIntMap<>();
         if (mBackgroundThread == null || !mBackgroundThread.isAlive())
             mBackgroundThread = new UnityNotificationBackgroundThread(this, mScheduledNotifications);
-        if (mRandom == null)
-            mRandom = new Random();
+
+        if (!sMemoryCallbacksRegistered) {
+            mContext.registerComponentCallbacks(new UnityNotificationMemoryCallbacks(mContext));
+            sMemoryCallbacksRegistered = true;
+        }
 
         mOpenActivity = UnityNotificationUtilities.getOpenAppActivity(mContext);
         if (mOpenActivity == null)
@@ -104,7 +132,7 @@ public class UnityNotificationManager extends BroadcastReceiver {
     static synchronized UnityNotificationManager getNotificationManagerImpl(Context context) {
         if (mUnityNotificationManager == null) {
             mUnityNotificationManager = new UnityNotificationManager();
-            mUnityNotificationManager.mScheduledNotifications = new ConcurrentHashMap<>();
+            mUnityNotificationManager.mScheduledNotifications = new UnityNotificationIntMap<>();
         }
 
         // always assign context, as it might change
@@ -130,6 +158,10 @@ public class UnityNotificationManager extends BroadcastReceiver {
         }
     }
 
+    Context getContext() {
+        return mContext;
+    }
+
     public NotificationManager getNotificationManager() {
         return (NotificationManager) mContext.getSystemService(Context.NOTIFICATION_SERVICE);
     }
@@ -341,29 +373,57 @@ public class UnityNotificationManager extends BroadcastReceiver {
     }
 
     private int generateUniqueId() {
-        int id = 0;
+        UnityNotificationIdAllocator allocator = getIdAllocator();
+        UnityNotificationRegistry registry = getNotificationRegistry();
+        int id;
         do {
-            id += mRandom.nextInt(1000);
-        } while (mScheduledNotifications.containsKey(Integer.valueOf(id)));
+            id = allocator.next();
+        } while (registry.contains(id) || mScheduledNotifications.containsKey(id));
 
         return id;
     }
 
+    // Returns -1 if queue is full and the notification was refused.
     public int scheduleNotification(Notification.Builder notificationBuilder, boolean customized) {
-        Bundle extras = notificationBuilder.getExtras();
-        int id;
-        if (extras.containsKey(KEY_ID))
-            id = notificationBuilder.getExtras().getInt(KEY_ID, -1);
-        else {
-            id = generateUniqueId();
-            extras.putInt(KEY_ID, id);
+        int id = assignNotificationId(notificationBuilder);
+        if (!mBackgroundThread.admitNotifications(1, id)) {
+            Log.w(TAG_UNITY, "Too many pending requests, notification " + id + " not scheduled");
+            return -1;
         }
-
         boolean addedNew = mScheduledNotifications.putIfAbsent(id, notificationBuilder) == null;
         mBackgroundThread.enqueueNotification(id, notificationBuilder, customized, addedNew);
         return id;
     }
 
+    // Schedules all notifications in a single background task, returns their IDs in the same order.
+    // Returns null if queue is full and the notifications were refused.
+    public int[] scheduleNotifications(Notification.Builder[] notificationBuilders, boolean customized) {
+        if (notificationBuilders.length > 0 && !mBackgroundThread.admitNotifications(notificationBuilders.length, -1)) {
+            Log.w(TAG_UNITY, "Too many pending requests, " + notificationBuilders.length + " notifications not scheduled");
+            return null;
+        }
+        int[] ids = new int[notificationBuilders.length];
+        boolean addedNew = false;
+        for (int i = 0; i < notificationBuilders.length; ++i) {
+            ids[i] = assignNotificationId(notificationBuilders[i]);
+            // generated IDs have to be taken right away, so the next one in batch does not get the same
+            addedNew |= mScheduledNotifications.putIfAbsent(ids[i], notificationBuilders[i]) == null;
+        }
+
+        if (ids.length > 0)
+            mBackgroundThread.enqueueNotifications(ids, notificationBuilders, customized, addedNew);
+        return ids;
+    }
+
+    private int assignNotificationId(Notification.Builder notificationBuilder) {
+        Bundle extras = notificationBuilder.getExtras();
+        if (extras.containsKey(KEY_ID))
+            return extras.getInt(KEY_ID, -1);
+        int id = generateUniqueId();
+        extras.putInt(KEY_ID, id);
+        return id;
+    }
+
     void performNotificationScheduling(int id, Notification.Builder notificationBuilder, boolean customized) {
         Bundle extras = notificationBuilder.getExtras();
         long repeatInterval = extras.getLong(KEY_REPEAT_INTERVAL, -1);
@@ -377,12 +437,11 @@ public class UnityNotificationManager extends BroadcastReceiver {
                 fireTime += repeatInterval;
             }
 
-            Intent intent = buildNotificationIntent();
-
-            if (intent != null) {
-                saveNotification(notificationBuilder.build(), customized);
-                scheduleAlarmWithNotification(notificationBuilder, intent, fireTime);
-            }
+            int savedSize = saveNotification(notificationBuilder.build(), customized);
+            scheduleAlarmWithNotification(notificationBuilder, fireTime);
+            // unless it got replaced in the meantime, builder is only kept if due soon, otherwise loaded when sent
+            if (savedSize >= 0 && mScheduledNotifications.remove(id, notificationBuilder))
+                getBuilderCache().put(id, fireTime, notificationBuilder, savedSize);
         }
 
         if (fireNow) {
@@ -391,25 +450,18 @@ public class UnityNotificationManager extends BroadcastReceiver {
         }
     }
 
-    void scheduleAlarmWithNotification(Notification.Builder notificationBuilder, Intent intent, long fireTime) {
+    void scheduleAlarmWithNotification(Notification.Builder notificationBuilder, long fireTime) {
         Bundle extras = notificationBuilder.getExtras();
         int id = extras.getInt(KEY_ID, -1);
         long repeatInterval = extras.getLong(KEY_REPEAT_INTERVAL, -1);
         // fireTime not taken from notification, because we may have adjusted it
-
-        // when rescheduling after boot notification may be absent
-        // also, we may be replacing an existing notification
-        mScheduledNotifications.put(Integer.valueOf(id), notificationBuilder);
-        intent.putExtra(KEY_NOTIFICATION_ID, id);
-
-        PendingIntent broadcast = PendingIntent.getBroadcast(mContext, id, intent, PendingIntent.FLAG_UPDATE_CURRENT|PendingIntent.FLAG_IMMUTABLE);
-        scheduleNotificationIntentAlarm(repeatInterval, fireTime, broadcast);
+        getAlarmEngine().schedule(id, fireTime, repeatInterval);
+        sNotificationStates.markArmed(id);
     }
 
     void scheduleAlarmWithNotification(Notification.Builder notificationBuilder) {
         long fireTime = notificationBuilder.getExtras().getLong(KEY_FIRE_TIME, 0L);
-        Intent intent = buildNotificationIntent();
-        scheduleAlarmWithNotification(notificationBuilder, intent, fireTime);
+        scheduleAlarmWithNotification(notificationBuilder, fireTime);
     }
 
     private Notification buildNotificationForSending(Class openActivity, Notification.Builder builder) {
@@ -424,37 +476,38 @@ public class UnityNotificationManager extends BroadcastReceiver {
         return builder.build();
     }
 
-    void performNotificationHousekeeping(Set<String> ids) {
+    void performNotificationHousekeeping(int[] ids) {
         Log.d(TAG_UNITY, "Checking for invalid notification IDs still hanging around");
 
-        Set<String> invalid = findInvalidNotificationIds(ids);
-        for (String id : invalid) {
-            ids.remove(id);
-            mScheduledNotifications.remove(Integer.valueOf(id));
+        int[] invalid = findInvalidNotificationIds(ids);
+        UnityNotificationRegistry registry = getNotificationRegistry();
+        for (int id : invalid) {
+            registry.remove(id);
+            mScheduledNotifications.remove(id);
+            sNotificationStates.forget(id);
         }
 
         // in case we have saved intents, clear them
-        for (String id : invalid)
+        for (int id : invalid)
             deleteExpiredNotificationIntent(id);
-    }
 
-    private Set<String> findInvalidNotificationIds(Set<String> ids) {
-        Intent intent = buildNotificationIntent();
-        HashSet<String> invalid = new HashSet<String>();
-        for (String id : ids) {
-            // Get the given broadcast PendingIntent by id as request code.
-            // FLAG_NO_CREATE is set to return null if the described PendingIntent doesn't exist.
-            PendingIntent broadcast = PendingIntent.getBroadcast(mContext, Integer.parseInt(id), intent, PendingIntent.FLAG_NO_CREATE|PendingIntent.FLAG_IMMUTABLE);
-            if (broadcast == null) {
-                invalid.add(id);
-            }
+        // saved notifications no longer in registry (removed without deleting them) would be kept forever
+        for (int id : getNotificationStore().getIds()) {
+            // fired one may have been removed from registry and still be loading to be shown
+            if (sNotificationStates.get(id) != UnityNotificationStateTracker.STATE_FIRED)
+                deleteOrphanedNotification(id);
         }
+    }
 
+    // Decides from tracked state where possible, only notifications with unknown state are checked with alarm manager.
+    private int[] findInvalidNotificationIds(int[] ids) {
+        UnityNotificationIdSet valid = new UnityNotificationIdSet();
+        UnityNotificationIdSet shown = new UnityNotificationIdSet();
         StatusBarNotification[] active = getNotificationManager().getActiveNotifications();
         for (StatusBarNotification notification : active) {
             // any notifications in status bar are still valid
-            String id = String.valueOf(notification.getId());
-            invalid.remove(id);
+            valid.add(notification.getId());
+            shown.add(notification.getId());
         }
 
         // if app is launched with notification, user still has access to it
@@ -462,65 +515,265 @@ public class UnityNotificationManager extends BroadcastReceiver {
             Intent currentIntent = UnityPlayer.currentActivity.getIntent();
             if (currentIntent.hasExtra(KEY_NOTIFICATION_ID)) {
                 int id = currentIntent.getExtras().getInt(KEY_NOTIFICATION_ID);
-                invalid.remove(String.valueOf(id));
+                valid.add(id);
+            }
+        }
+
+        UnityNotificationAlarmEngine alarms = getAlarmEngine();
+        UnityNotificationIdSet saved = new UnityNotificationIdSet();
+        int[] invalid = new int[ids.length];
+        int count = 0, probed = 0;
+        for (int id : ids) {
+            saved.add(id);
+            if (valid.contains(id))
+                continue;
+            int state = sNotificationStates.get(id);
+            // alarm we set is still pending or notification is being shown right now
+            if (state == UnityNotificationStateTracker.STATE_ARMED || state == UnityNotificationStateTracker.STATE_FIRED)
+                continue;
+            if (state == UnityNotificationStateTracker.STATE_UNKNOWN) {
+                ++probed;
+                if (alarms.isScheduled(id)) {
+                    sNotificationStates.markArmed(id);
+                    continue;
+                }
             }
+            // shown and then dismissed, or nothing would ever show it
+            invalid[count++] = id;
         }
 
-        return invalid;
+        sNotificationStates.retain(saved, shown);
+        sNotificationStates.countPass(probed, ids.length - probed);
+        return Arrays.copyOf(invalid, count);
     }
 
-    private Intent buildNotificationIntent() {
-        Intent intent = new Intent(mContext, UnityNotificationManager.class);
-        intent.setFlags(Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_CLEAR_TASK);
-        return intent;
+    UnityNotificationStore getNotificationStore() {
+        synchronized (UnityNotificationManager.class) {
+            if (sNotificationStore == null)
+                sNotificationStore = new UnityNotificationJournalStore(mContext, getNotificationRegistry());
+            return sNotificationStore;
+        }
     }
 
-    // Save the notification intent to SharedPreferences if reschedule_on_restart is true,
-    // which will be consumed by UnityNotificationRestartOnBootReceiver for device reboot.
-    synchronized void saveNotification(Notification notification, boolean customized) {
-        String notification_id = Integer.toString(notification.extras.getInt(KEY_ID, -1));
-        SharedPreferences prefs = mContext.getSharedPreferences(getSharedPrefsNameByNotificationId(notification_id), Context.MODE_PRIVATE);
-        UnityNotificationUtilities.serializeNotification(prefs, notification, customized);
+    UnityNotificationRegistry getNotificationRegistry() {
+        synchronized (UnityNotificationManager.class) {
+            if (sNotificationRegistry == null)
+                sNotificationRegistry = new UnityNotificationRegistry(mContext);
+            return sNotificationRegistry;
+        }
     }
 
-    static String getSharedPrefsNameByNotificationId(String id) {
-        return String.format("u_notification_data_%s", id);
+    UnityNotificationStringDictionary getStringDictionary() {
+        synchronized (UnityNotificationManager.class) {
+            if (sStringDictionary == null)
+                sStringDictionary = new UnityNotificationStringDictionary(mContext);
+            return sStringDictionary;
+        }
     }
 
-    // Load all the notification intents from SharedPreferences.
-    synchronized List<Notification.Builder> loadSavedNotifications() {
-        Set<String> ids = getScheduledNotificationIDs();
+    UnityNotificationIdAllocator getIdAllocator() {
+        synchronized (UnityNotificationManager.class) {
+            if (sIdAllocator == null)
+                sIdAllocator = new UnityNotificationIdAllocator(mContext);
+            return sIdAllocator;
+        }
+    }
 
-        List<Notification.Builder> intent_data_list = new ArrayList<>();
-        Set<String> idsMarkedForRemoval = new HashSet<String>();
+    // Engine is chosen by app meta-data, alarms set by previous engine are moved over when it changes.
+    UnityNotificationAlarmEngine getAlarmEngine() {
+        synchronized (UnityNotificationManager.class) {
+            if (sAlarmEngine == null) {
+                Bundle metaData = getAppMetadata();
+                String engine = metaData == null ? null : metaData.getString("com.unity.androidnotifications.alarm_engine");
+                if (ALARM_ENGINE_MASTER.equals(engine)) {
+                    sAlarmEngine = new UnityNotificationMasterAlarmEngine(mContext);
+                } else if (ALARM_ENGINE_BUDGET.equals(engine)) {
+                    int budget = metaData.getInt("com.unity.androidnotifications.alarm_budget", DEFAULT_ALARM_BUDGET);
+                    sAlarmEngine = new UnityNotificationBudgetAlarmEngine(mContext, budget);
+                } else {
+                    engine = ALARM_ENGINE_DIRECT;
+                    sAlarmEngine = new UnityNotificationDirectAlarmEngine(mContext);
+                }
+                switchAlarmEngine(engine);
+            }
+            return sAlarmEngine;
+        }
+    }
 
-        for (String id : ids) {
-            SharedPreferences prefs = mContext.getSharedPreferences(getSharedPrefsNameByNotificationId(id), Context.MODE_PRIVATE);
-            Notification.Builder builder = null;
-            Object notification = UnityNotificationUtilities.deserializeNotification(mContext, prefs);
-            if (notification != null) {
-                if (notification instanceof Notification.Builder)
-                    builder = (Notification.Builder)notification;
-                else
-                    builder = UnityNotificationUtilities.recoverBuilder(mContext, (Notification)notification);
+    private void switchAlarmEngine(String engine) {
+        SharedPreferences prefs = mContext.getSharedPreferences(ALARM_ENGINE_SHARED_PREFS, Context.MODE_PRIVATE);
+        String previous = prefs.getString(ALARM_ENGINE_SHARED_PREFS_KEY, ALARM_ENGINE_DIRECT);
+        if (previous.equals(engine))
+            return;
+
+        Log.d(TAG_UNITY, "Moving scheduled notifications from " + previous + " to " + engine + " alarms");
+        if (ALARM_ENGINE_MASTER.equals(previous)) {
+            UnityNotificationMasterAlarmEngine.cancelAlarm(mContext);
+        } else if (!ALARM_ENGINE_DIRECT.equals(engine)) {
+            // new engine takes the ones with known schedule from registry, others keep their own alarms
+            UnityNotificationDirectAlarmEngine direct = new UnityNotificationDirectAlarmEngine(mContext);
+            for (UnityNotificationRegistry.Entry entry : getNotificationRegistry().getEntries()) {
+                if (entry.hasSchedule())
+                    direct.cancel(entry.id);
             }
+        }
 
-            if (builder != null)
-                intent_data_list.add(builder);
-            else
-                idsMarkedForRemoval.add(id);
+        // new engine is recorded once its alarms are set, until then it is moved over again each time process starts
+        if (mBackgroundThread != null && mBackgroundThread.getState() != Thread.State.TERMINATED)
+            mBackgroundThread.enqueueRearmAlarms(engine);
+        else
+            AsyncTask.execute(() -> rearmAlarms(engine));
+    }
+
+    // Sets alarms of current engine for all notifications with known schedule, returns false if that failed.
+    boolean rearmAlarms(String engine) {
+        int count = 0;
+        try {
+            UnityNotificationAlarmEngine alarms = getAlarmEngine();
+            long now = System.currentTimeMillis();
+            for (UnityNotificationRegistry.Entry entry : getNotificationRegistry().getEntries()) {
+                // notifications of old versions get their schedule when loaded, have alarms of their own until then
+                if (!entry.hasSchedule())
+                    continue;
+                // past one-shot notifications go off right away, repetitions that passed are skipped
+                alarms.schedule(entry.id, UnityNotificationRestartReceiver.getNextFireTime(entry, now), entry.repeatInterval);
+                sNotificationStates.markArmed(entry.id);
+                ++count;
+            }
+            alarms.commit();
+        } catch (Exception e) {
+            Log.e(TAG_UNITY, "Failed to move scheduled notifications to " + engine + " alarms", e);
+            return false;
+        }
+
+        Log.d(TAG_UNITY, "Moved " + count + " scheduled notifications to " + engine + " alarms");
+        mContext.getSharedPreferences(ALARM_ENGINE_SHARED_PREFS, Context.MODE_PRIVATE).edit().putString(ALARM_ENGINE_SHARED_PREFS_KEY, engine).apply();
+        return true;
+    }
+
+    // Save the notification to persistent storage,
+    // which will be consumed by UnityNotificationRestartOnBootReceiver for device reboot.
+    // Returns size of saved data, -1 if notification could not be serialized.
+    int saveNotification(Notification notification, boolean customized) {
+        int notificationId = notification.extras.getInt(KEY_ID, -1);
+        // serialized outside of the lock, so that workers saving different notifications don't wait for each other
+        ByteBuffer data = UnityNotificationUtilities.serializeNotification(notification, customized, getStringDictionary());
+        if (data == null)
+            return -1;
+        int size = data.remaining();
+        synchronized (sIdLocks.forId(notificationId)) {
+            getNotificationStore().put(notificationId, data);
+            getNotificationRegistry().put(UnityNotificationRegistry.Entry.fromNotification(notification));
+        }
+        return size;
+    }
+
+    // For saved notifications that can not be loaded.
+    void removeSavedNotification(int id) {
+        synchronized (sIdLocks.forId(id)) {
+            getNotificationRegistry().remove(id);
+            deleteExpiredNotificationIntent(id);
         }
+    }
 
-        if (!idsMarkedForRemoval.isEmpty()) {
-            ids = new HashSet<>(ids);
-            for (String id : idsMarkedForRemoval) {
-                ids.remove(id);
+    // Deletes saved notification unless it is in registry, checked under the lock so that it can't be saved meanwhile.
+    private void deleteOrphanedNotification(int id) {
+        synchronized (sIdLocks.forId(id)) {
+            if (!getNotificationRegistry().contains(id))
                 deleteExpiredNotificationIntent(id);
+        }
+    }
+
+    // Reads saved notification to get its schedule into registry, removes it if it can not be read.
+    UnityNotificationRegistry.Entry restoreRegistryEntry(int id) {
+        synchronized (sIdLocks.forId(id)) {
+            UnityNotificationRegistry registry = getNotificationRegistry();
+            Notification.Builder builder = deserializeNotificationBuilder(id);
+            if (builder == null) {
+                removeSavedNotification(id);
+                return null;
             }
-            saveScheduledNotificationIDs(ids);
+
+            UnityNotificationRegistry.Entry entry = UnityNotificationRegistry.Entry.fromNotification(builder.build());
+            registry.put(entry);
+            return entry;
         }
+    }
 
-        return intent_data_list;
+    // Make saved notifications and scheduled IDs durable, writes before this may be lost if device shuts down.
+    // Alarms are updated afterwards, so that an alarm never goes off for notification that is not saved.
+    void commitNotificationStorage() {
+        getNotificationStore().commit();
+        getNotificationRegistry().commit();
+        getAlarmEngine().commit();
+    }
+
+    UnityNotificationBuilderCache getBuilderCache() {
+        synchronized (this) {
+            if (mBuilderCache == null) {
+                Bundle metaData = getAppMetadata();
+                int size = metaData == null ? DEFAULT_BUILDER_CACHE_SIZE : metaData.getInt("com.unity.androidnotifications.builder_cache_size", DEFAULT_BUILDER_CACHE_SIZE);
+                mBuilderCache = new UnityNotificationBuilderCache(size);
+            }
+            return mBuilderCache;
+        }
+    }
+
+    // Releases what can be loaded again from storage, more the lower memory is, returns estimated bytes released.
+    public long trimMemory(int level) {
+        UnityNotificationBuilderCache cache = getBuilderCache();
+        int keep;
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE)
+            keep = 0;
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL)
+            keep = cache.capacity() / 4;
+        else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW)
+            keep = cache.capacity() / 2;
+        else
+            return 0;
+
+        long released = cache.trim(keep);
+        if (released > 0)
+            Log.d(TAG_UNITY, "Memory trim level " + level + ", released about " + released + " bytes of cached notifications");
+        return released;
+    }
+
+    // For how long saved notifications can stay uncommitted, so that more changes can be committed together.
+    int getCommitLatency() {
+        if (mCommitLatencySetting < 0) {
+            Bundle metaData = getAppMetadata();
+            int latency = metaData == null ? DEFAULT_COMMIT_LATENCY_MS : metaData.getInt("com.unity.androidnotifications.commit_latency_ms", DEFAULT_COMMIT_LATENCY_MS);
+            mCommitLatencySetting = Math.max(0, latency);
+        }
+        return mCommitLatencySetting;
+    }
+
+    // How many threads schedule and cancel notifications, tasks for the same ID always go to the same one.
+    int getWorkerCount() {
+        if (mWorkerCountSetting < 0) {
+            Bundle metaData = getAppMetadata();
+            int count = metaData == null ? DEFAULT_WORKER_COUNT : metaData.getInt("com.unity.androidnotifications.worker_threads", DEFAULT_WORKER_COUNT);
+            mWorkerCountSetting = Math.max(1, count);
+        }
+        return mWorkerCountSetting;
+    }
+
+    // How many requests can be pending before scheduling is held back, 0 for no limit.
+    int getQueueLimit() {
+        if (mQueueLimitSetting < 0) {
+            Bundle metaData = getAppMetadata();
+            int limit = metaData == null ? DEFAULT_QUEUE_LIMIT : metaData.getInt("com.unity.androidnotifications.queue_limit", DEFAULT_QUEUE_LIMIT);
+            mQueueLimitSetting = Math.max(0, limit);
+        }
+        return mQueueLimitSetting;
+    }
+
+    String getQueuePolicy() {
+        Bundle metaData = getAppMetadata();
+        String policy = metaData == null ? null : metaData.getString("com.unity.androidnotifications.queue_policy");
+        if (UnityNotificationBackgroundThread.QUEUE_POLICY_COALESCE.equals(policy) || UnityNotificationBackgroundThread.QUEUE_POLICY_REJECT.equals(policy))
+            return policy;
+        return UnityNotificationBackgroundThread.QUEUE_POLICY_BLOCK;
     }
 
     private boolean canScheduleExactAlarms(AlarmManager alarmManager) {
@@ -542,19 +795,34 @@ public class UnityNotificationManager extends BroadcastReceiver {
         return canScheduleExactAlarms(alarmManager);
     }
 
-    // Call AlarmManager to set the broadcast intent with fire time and interval.
-    private void scheduleNotificationIntentAlarm(long repeatInterval, long fireTime, PendingIntent broadcast) {
-        AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+    // Returns { notifications with system alarm, notifications waiting for one }.
+    public int[] getAlarmCounts() {
+        return getAlarmEngine().getAlarmCounts();
+    }
 
-        if (repeatInterval <= 0) {
-            if (canScheduleExactAlarms(alarmManager)) {
-                alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, fireTime, broadcast);
-            } else {
-                alarmManager.set(AlarmManager.RTC_WAKEUP, fireTime, broadcast);
-            }
-        } else {
-            alarmManager.setInexactRepeating(AlarmManager.RTC_WAKEUP, fireTime, repeatInterval, broadcast);
-        }
+    // How many scheduling and cancelling requests were dropped, because later ones made them redundant.
+    public long getElidedTaskCount() {
+        return mBackgroundThread == null ? 0 : mBackgroundThread.getElidedTaskCount();
+    }
+
+    // How many times saved notifications were committed to storage, a burst of requests is committed once.
+    public long getCommitCount() {
+        return mBackgroundThread == null ? 0 : mBackgroundThread.getCommitCount();
+    }
+
+    // Returns { notifications checked with alarm manager, notifications decided from tracked state } by housekeeping.
+    public long[] getHousekeepingCounts() {
+        return sNotificationStates.getCounts();
+    }
+
+    // Returns { pending requests, most ever pending, limit (0 when unbounded), notifications refused }.
+    public long[] getQueueStatus() {
+        return mBackgroundThread == null ? new long[4] : mBackgroundThread.getQueueStatus();
+    }
+
+    // Returns requests started, total and longest wait in milliseconds, for each lane: immediate, normal, bulk.
+    public long[] getQueueWaitTimes() {
+        return mBackgroundThread == null ? new long[0] : mBackgroundThread.getLaneWaitTimes();
     }
 
     // Check the notification status by id.
@@ -564,7 +832,7 @@ public class UnityNotificationManager extends BroadcastReceiver {
                 return 2;
         }
 
-        if (mScheduledNotifications.containsKey(id))
+        if (mScheduledNotifications.containsKey(id) || getNotificationRegistry().contains(id))
             return 1;
         if (checkIfPendingNotificationIsRegistered(id))
             return 1;
@@ -574,8 +842,7 @@ public class UnityNotificationManager extends BroadcastReceiver {
 
     // Check if the pending notification with the given id has been registered.
     public boolean checkIfPendingNotificationIsRegistered(int id) {
-        Intent intent = new Intent(mActivity, UnityNotificationManager.class);
-        return null != PendingIntent.getBroadcast(mContext, id, intent, PendingIntent.FLAG_NO_CREATE|PendingIntent.FLAG_IMMUTABLE);
+        return getAlarmEngine().isScheduled(id);
     }
 
     // Cancel all the pending notifications.
@@ -583,39 +850,64 @@ public class UnityNotificationManager extends BroadcastReceiver {
         mBackgroundThread.enqueueCancelAllNotifications();
     }
 
-    private synchronized Set<String> getScheduledNotificationIDs() {
-        SharedPreferences prefs = mContext.getSharedPreferences(NOTIFICATION_IDS_SHARED_PREFS, Context.MODE_PRIVATE);
-        Set<String> ids = prefs.getStringSet(NOTIFICATION_IDS_SHARED_PREFS_KEY, new HashSet<String>());
-        return ids;
+    // Cancel a pending notification by id.
+    public void cancelPendingNotification(int id) {
+        mBackgroundThread.enqueueCancelNotification(id);
     }
 
-    synchronized void saveScheduledNotificationIDs(Set<String> ids) {
-        SharedPreferences.Editor editor = mContext.getSharedPreferences(NOTIFICATION_IDS_SHARED_PREFS, Context.MODE_PRIVATE).edit().clear();
-        editor.putStringSet(NOTIFICATION_IDS_SHARED_PREFS_KEY, ids);
-        editor.apply();
+    // Cancel pending notifications by ids, all in one go.
+    public void cancelPendingNotifications(int[] ids) {
+        if (ids.length > 0)
+            mBackgroundThread.enqueueCancelNotifications(ids);
     }
 
-    // Cancel a pending notification by id.
-    public void cancelPendingNotification(int id) {
-        mBackgroundThread.enqueueCancelNotification(id);
+    // Cancel all pending notifications in the given channel.
+    public void cancelPendingNotificationsInChannel(String channelId) {
+        mBackgroundThread.enqueueCancelNotificationsInChannel(channelId);
     }
 
-    // Cancel a pending notification by id.
-    void cancelPendingNotificationIntent(int id) {
-        Intent intent = new Intent(mContext, UnityNotificationManager.class);
-        PendingIntent broadcast = PendingIntent.getBroadcast(mContext, id, intent, PendingIntent.FLAG_NO_CREATE|PendingIntent.FLAG_IMMUTABLE);
+    // Cancel all pending notifications in the given group.
+    public void cancelPendingNotificationsInGroup(String group) {
+        mBackgroundThread.enqueueCancelNotificationsInGroup(group);
+    }
+
+    // IDs of scheduled notifications in the group, only notifications saved by older versions are loaded to check their group.
+    int[] findNotificationIdsInGroup(String group) {
+        UnityNotificationRegistry registry = getNotificationRegistry();
+        for (int id : registry.getIdsWithUnknownGroup()) {
+            // one at a time, so that others can be saved or sent meanwhile
+            synchronized (sIdLocks.forId(id)) {
+                UnityNotificationRegistry.Entry entry = registry.get(id);
+                if (entry == null || entry.hasGroup())
+                    continue;  // changed since the IDs were taken
+                if (!entry.hasSchedule()) {
+                    restoreRegistryEntry(id);
+                    continue;
+                }
 
-        if (broadcast != null) {
-            AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
-            alarmManager.cancel(broadcast);
-            broadcast.cancel();
+                // keep the schedule, it may have moved on since notification was saved
+                Notification.Builder builder = deserializeNotificationBuilder(id);
+                if (builder == null)
+                    removeSavedNotification(id);
+                else
+                    registry.put(new UnityNotificationRegistry.Entry(id, entry.fireTime, entry.repeatInterval, entry.channelId, builder.build().getGroup()));
+            }
         }
+        return registry.getIdsInGroup(group);
+    }
+
+    // Cancel a pending notification by id.
+    void cancelPendingNotificationIntent(int id) {
+        getAlarmEngine().cancel(id);
+        sNotificationStates.forget(id);
     }
 
-    // Delete the notification intent from SharedPreferences by id.
-    synchronized void deleteExpiredNotificationIntent(String id) {
-        SharedPreferences notificationPrefs = mContext.getSharedPreferences(getSharedPrefsNameByNotificationId(id), Context.MODE_PRIVATE);
-        notificationPrefs.edit().clear().apply();
+    // Delete the saved notification from persistent storage by id.
+    void deleteExpiredNotificationIntent(int id) {
+        synchronized (sIdLocks.forId(id)) {
+            getBuilderCache().remove(id);
+            getNotificationStore().delete(id);
+        }
     }
 
     // Cancel a previously shown notification by id.
@@ -637,7 +929,11 @@ public class UnityNotificationManager extends BroadcastReceiver {
     }
 
     public void onReceive(Intent intent) {
-        showNotification(intent);
+        if (!getAlarmEngine().onAlarm(intent)) {
+            showNotification(intent);
+            // sent notification is no longer in registry, a new process must not schedule it again
+            getNotificationRegistry().commit();
+        }
     }
 
     private void showNotification(Intent intent) {
@@ -649,25 +945,35 @@ public class UnityNotificationManager extends BroadcastReceiver {
         if (notification instanceof Notification) {
             Notification notif = (Notification) notification;
             int id = notif.extras.getInt(KEY_ID, -1);
+            sNotificationStates.markFired(id);
             notify(id, notif);
             return;
         }
 
-        Integer notificationId = (Integer)notification;
+        showNotification((Integer)notification);
+    }
+
+    void showNotification(int notificationId) {
+        sNotificationStates.markFired(notificationId);
         Notification.Builder builder = mScheduledNotifications.get(notificationId);
+        if (builder == null)
+            builder = getBuilderCache().get(notificationId);
         if (builder != null) {
             notify(notificationId, builder);
             return;
         }
 
+        long receivedAt = SystemClock.elapsedRealtime();
         AsyncTask.execute(() -> {
             Notification.Builder nb = deserializeNotificationBuilder(notificationId);
             if (nb == null) {
                 Log.e(TAG_UNITY, "Failed to recover builder, can't send notification");
+                sNotificationStates.forget(notificationId);
                 return;
             }
 
             notify(notificationId, nb);
+            Log.d(TAG_UNITY, "Notification " + notificationId + " restored from storage and sent in " + (SystemClock.elapsedRealtime() - receivedAt) + " ms");
         });
     }
 
@@ -677,6 +983,7 @@ public class UnityNotificationManager extends BroadcastReceiver {
             openActivity = UnityNotificationUtilities.getOpenAppActivity(mContext);
             if (openActivity == null) {
                 Log.e(TAG_UNITY, "Activity not found, cannot show notification");
+                sNotificationStates.forget(id);
                 return;
             }
         }
@@ -687,6 +994,8 @@ public class UnityNotificationManager extends BroadcastReceiver {
         Notification notification = buildNotificationForSending(openActivity, builder);
         if (notification != null) {
             notify(id, notification);
+        } else {
+            sNotificationStates.forget(id);
         }
     }
 
@@ -700,8 +1009,11 @@ public class UnityNotificationManager extends BroadcastReceiver {
         long repeatInterval = notification.extras.getLong(KEY_REPEAT_INTERVAL, -1);
         if (repeatInterval <= 0) {
             mScheduledNotifications.remove(id);
+            // nothing will read the saved notification anymore
+            removeSavedNotification(id);
             cancelPendingNotificationIntent(id);
         }
+        sNotificationStates.markDisplayed(id, repeatInterval > 0);
 
         try {
             if (mNotificationCallback != null)
@@ -972,8 +1284,9 @@ public class UnityNotificationManager extends BroadcastReceiver {
     private Object getNotificationOrBuilderForIntent(Intent intent) {
         Object notification = getNotificationOrIdForIntent(intent);
         if (notification instanceof Integer) {
-            Integer notificationId = (Integer)notification;
-            if ((notification = mScheduledNotifications.get(notificationId)) == null) {
+            int notificationId = (Integer)notification;
+            if ((notification = mScheduledNotifications.get(notificationId)) == null
+                && (notification = getBuilderCache().get(notificationId)) == null) {
                 // in case we don't have cached notification, deserialize from storage
                 return deserializeNotificationBuilder(notificationId);
             }
@@ -982,9 +1295,12 @@ public class UnityNotificationManager extends BroadcastReceiver {
         return notification;
     }
 
-    private Notification.Builder deserializeNotificationBuilder(Integer notificationId) {
-        SharedPreferences prefs = mContext.getSharedPreferences(getSharedPrefsNameByNotificationId(notificationId.toString()), Context.MODE_PRIVATE);
-        Object notification = UnityNotificationUtilities.deserializeNotification(mContext, prefs);
+    // safe to call from any thread
+    Notification.Builder deserializeNotificationBuilder(int notificationId) {
+        ByteBuffer data = getNotificationStore().get(notificationId);
+        if (data == null)
+            return null;
+        Object notification = UnityNotificationUtilities.deserializeNotification(mContext, data);
         if (notification == null) {
             return null;
         }
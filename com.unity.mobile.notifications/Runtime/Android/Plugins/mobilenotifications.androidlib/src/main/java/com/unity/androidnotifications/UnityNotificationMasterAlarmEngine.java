@@ -0,0 +1,214 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
+
+import android.app.AlarmManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.PriorityQueue;
+
+class UnityNotificationMasterAlarmEngine implements UnityNotificationAlarmEngine {
+    /*
+        Only one system alarm for the earliest of all scheduled notifications, the rest are kept in a heap in memory.
+        Scheduling and cancelling is a change to the heap, the system alarm is only touched on commit and only
+        if the earliest fire time changed. When the alarm goes off, everything due is sent, repeating notifications
+        are put back for their next repetition and the alarm is set for what is earliest then.
+        The heap is not saved, it is rebuilt from the registry of scheduled notifications when process starts,
+        hence registry is updated with next fire time of repeating notifications as they go off and sent
+        one-shot notifications are removed from it, otherwise a new process would send them again.
+        Heap may contain stale alarms (cancelled or replaced), these are skipped when they come to the top.
+    */
+    static final String ACTION_MASTER_ALARM = "com.unity.androidnotifications.MASTER_ALARM";
+    private static final long DUE_TOLERANCE = 1000;  // what is due within a second is sent together
+    private static final long NOT_ARMED = Long.MAX_VALUE;
+    private static final long ARMED_UNKNOWN = Long.MIN_VALUE;
+
+    private static final class Alarm {
+        final int id;
+        final long fireTime;
+        final long repeatInterval;
+
+        Alarm(int id, long fireTime, long repeatInterval) {
+            this.id = id;
+            this.fireTime = fireTime;
+            this.repeatInterval = repeatInterval;
+        }
+    }
+
+    private Context mContext;
+    private UnityNotificationIntMap<Alarm> mAlarms;
+    private PriorityQueue<Alarm> mQueue;
+    // fire time of registered system alarm, unknown when process starts
+    private long mArmedTime = ARMED_UNKNOWN;
+
+    UnityNotificationMasterAlarmEngine(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public synchronized void schedule(int id, long fireTime, long repeatInterval) {
+        load();
+        Alarm alarm = new Alarm(id, fireTime, repeatInterval);
+        mAlarms.put(id, alarm);
+        mQueue.add(alarm);
+        if (mQueue.size() > 2 * mAlarms.size() + 64)
+            rebuildQueue();
+    }
+
+    @Override
+    public synchronized void cancel(int id) {
+        load();
+        mAlarms.remove(id);
+    }
+
+    @Override
+    public synchronized boolean isScheduled(int id) {
+        load();
+        return mAlarms.containsKey(id);
+    }
+
+    @Override
+    public synchronized void commit() {
+        load();
+        arm();
+    }
+
+    @Override
+    public boolean onAlarm(Intent intent) {
+        if (!ACTION_MASTER_ALARM.equals(intent.getAction()))
+            return false;
+
+        ArrayList<Alarm> due = new ArrayList<>();
+        boolean changed = false;
+        UnityNotificationManager manager = UnityNotificationManager.getNotificationManagerImpl(mContext);
+        UnityNotificationRegistry registry = manager.getNotificationRegistry();
+        synchronized (this) {
+            load();
+            long now = System.currentTimeMillis();
+            mArmedTime = NOT_ARMED;  // the alarm is used up
+            Alarm alarm;
+            while ((alarm = peek()) != null && alarm.fireTime <= now + DUE_TOLERANCE) {
+                mQueue.poll();
+                due.add(alarm);
+                if (alarm.repeatInterval > 0) {
+                    Alarm next = new Alarm(alarm.id, nextRepetition(alarm.fireTime, alarm.repeatInterval, now + DUE_TOLERANCE), alarm.repeatInterval);
+                    mAlarms.put(next.id, next);
+                    mQueue.add(next);
+                    UnityNotificationRegistry.Entry entry = registry.get(next.id);
+                    if (entry != null) {
+                        registry.put(new UnityNotificationRegistry.Entry(entry.id, next.fireTime, entry.repeatInterval, entry.channelId, entry.group));
+                        changed = true;
+                    }
+                } else {
+                    mAlarms.remove(alarm.id);
+                    // notification itself may still be loading when the registry gets committed below
+                    changed |= registry.remove(alarm.id);
+                }
+            }
+            arm();
+        }
+
+        for (Alarm alarm : due)
+            manager.showNotification(alarm.id);
+        // so that notification or repetition already sent is not sent again if process gets killed
+        if (changed)
+            registry.commit();
+        return true;
+    }
+
+    @Override
+    public synchronized int[] getAlarmCounts() {
+        load();
+        // one system alarm for the earliest notification
+        int count = mAlarms.size();
+        return new int[] { Math.min(1, count), Math.max(0, count - 1) };
+    }
+
+    // fire time of the earliest alarm, Long.MAX_VALUE if there is none
+    synchronized long getNextFireTime() {
+        load();
+        Alarm alarm = peek();
+        return alarm == null ? Long.MAX_VALUE : alarm.fireTime;
+    }
+
+    private static long nextRepetition(long fireTime, long repeatInterval, long after) {
+        if (fireTime > after)
+            return fireTime;
+        return fireTime + ((after - fireTime) / repeatInterval + 1) * repeatInterval;
+    }
+
+    // returns the earliest alarm that is still valid, dropping stale ones on the way
+    private Alarm peek() {
+        Alarm alarm;
+        while ((alarm = mQueue.peek()) != null && mAlarms.get(alarm.id) != alarm)
+            mQueue.poll();
+        return alarm;
+    }
+
+    private void rebuildQueue() {
+        mQueue.clear();
+        mQueue.addAll(mAlarms.values());
+    }
+
+    private void arm() {
+        Alarm alarm = peek();
+        long fireTime = alarm == null ? NOT_ARMED : alarm.fireTime;
+        if (fireTime == mArmedTime)
+            return;
+
+        try {
+            if (alarm == null) {
+                cancelAlarm(mContext);
+            } else {
+                PendingIntent broadcast = getAlarmIntent(mContext, PendingIntent.FLAG_UPDATE_CURRENT);
+                AlarmManager alarmManager = (AlarmManager) mContext.getSystemService(Context.ALARM_SERVICE);
+                if (UnityNotificationManager.getNotificationManagerImpl(mContext).canScheduleExactAlarms())
+                    alarmManager.setExactAndAllowWhileIdle(AlarmManager.RTC_WAKEUP, fireTime, broadcast);
+                else
+                    alarmManager.set(AlarmManager.RTC_WAKEUP, fireTime, broadcast);
+            }
+            mArmedTime = fireTime;
+        } catch (Exception e) {
+            Log.e(TAG_UNITY, "Failed to set alarm for scheduled notifications", e);
+        }
+    }
+
+    // for when other engine is used, but this one might have left its alarm
+    static void cancelAlarm(Context context) {
+        PendingIntent broadcast = getAlarmIntent(context, PendingIntent.FLAG_NO_CREATE);
+        if (broadcast != null) {
+            AlarmManager alarmManager = (AlarmManager) context.getSystemService(Context.ALARM_SERVICE);
+            alarmManager.cancel(broadcast);
+            broadcast.cancel();
+        }
+    }
+
+    private static PendingIntent getAlarmIntent(Context context, int flags) {
+        Intent intent = new Intent(context, UnityNotificationManager.class);
+        intent.setAction(ACTION_MASTER_ALARM);
+        return PendingIntent.getBroadcast(context, 0, intent, flags | PendingIntent.FLAG_IMMUTABLE);
+    }
+
+    private void load() {
+        if (mAlarms != null)
+            return;
+        mAlarms = new UnityNotificationIntMap<>();
+        mQueue = new PriorityQueue<>(64, (a, b) -> Long.compare(a.fireTime, b.fireTime));
+        long now = System.currentTimeMillis();
+        UnityNotificationRegistry registry = UnityNotificationManager.getNotificationManagerImpl(mContext).getNotificationRegistry();
+        for (UnityNotificationRegistry.Entry entry : registry.getEntries()) {
+            // notifications of old versions get their schedule when loaded, have alarms of their own until then
+            if (!entry.hasSchedule())
+                continue;
+            // past non-repeating ones were missed and are sent right away, repetitions that passed are skipped
+            long fireTime = entry.repeatInterval > 0 ? nextRepetition(entry.fireTime, entry.repeatInterval, now) : entry.fireTime;
+            Alarm alarm = new Alarm(entry.id, fireTime, entry.repeatInterval);
+            mAlarms.put(alarm.id, alarm);
+            mQueue.add(alarm);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.unity.androidnotifications;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+
+// Lets notification manager release cached notifications when system runs low on memory.
+class UnityNotificationMemoryCallbacks implements ComponentCallbacks2 {
+    private Context mContext;
+
+    UnityNotificationMemoryCallbacks(Context context) {
+        mContext = context;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        UnityNotificationManager.getNotificationManagerImpl(mContext).trimMemory(level);
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(ComponentCallbacks2.TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+    }
+}
@@ -0,0 +1,123 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
+import static com.unity.androidnotifications.UnityNotificationUtilities.SAVED_NOTIFICATION_FALLBACK_KEY;
+import static com.unity.androidnotifications.UnityNotificationUtilities.SAVED_NOTIFICATION_PRIMARY_KEY;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Base64;
+import android.util.Log;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// The original storage layout: one SharedPreferences file per notification with Base64 encoded data.
+// No longer used for saving, but kept to read what older versions have saved.
+class UnityNotificationPrefsStore implements UnityNotificationStore {
+    static final String NOTIFICATION_PREFS_PREFIX = "u_notification_data_";
+
+    private Context mContext;
+    private String mPrefix;
+
+    UnityNotificationPrefsStore(Context context) {
+        this(context, NOTIFICATION_PREFS_PREFIX);
+    }
+
+    UnityNotificationPrefsStore(Context context, String prefix) {
+        mContext = context;
+        mPrefix = prefix;
+    }
+
+    private SharedPreferences getPrefs(int id) {
+        return mContext.getSharedPreferences(mPrefix + id, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public void put(int id, ByteBuffer data) {
+        String encoded;
+        if (data.hasArray()) {
+            encoded = Base64.encodeToString(data.array(), data.arrayOffset() + data.position(), data.remaining(), 0);
+        } else {
+            byte[] bytes = new byte[data.remaining()];
+            data.duplicate().get(bytes);
+            encoded = Base64.encodeToString(bytes, 0, bytes.length, 0);
+        }
+
+        SharedPreferences.Editor editor = getPrefs(id).edit().clear();
+        editor.putString(SAVED_NOTIFICATION_PRIMARY_KEY, encoded);
+        editor.apply();
+    }
+
+    @Override
+    public ByteBuffer get(int id) {
+        SharedPreferences prefs = getPrefs(id);
+        ByteBuffer primary = decode(prefs.getString(SAVED_NOTIFICATION_PRIMARY_KEY, ""));
+        String fallback = prefs.getString(SAVED_NOTIFICATION_FALLBACK_KEY, "");
+        if (fallback == null || fallback.length() == 0)
+            return primary;
+        // older versions saved parcelled notification with our own serialization as fallback
+        if (primary != null && UnityNotificationUtilities.deserializeNotification(mContext, primary) != null)
+            return primary;
+        return decode(fallback);
+    }
+
+    @Override
+    public void delete(int id) {
+        getPrefs(id).edit().clear().apply();
+    }
+
+    @Override
+    public void commit() {
+        // changes are applied asynchronously by SharedPreferences
+    }
+
+    @Override
+    public int[] getIds() {
+        return findSavedIds();
+    }
+
+    // removes the file itself, not only the contents
+    void deleteFile(int id) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N)
+            mContext.deleteSharedPreferences(mPrefix + id);
+        else
+            getPrefs(id).edit().clear().commit();
+    }
+
+    // IDs of all notifications that have a file, including the ones that were never removed from disk
+    int[] findSavedIds() {
+        File dir = new File(mContext.getApplicationInfo().dataDir, "shared_prefs");
+        String[] files = dir.list();
+        if (files == null)
+            return new int[0];
+
+        int[] ids = new int[files.length];
+        int count = 0;
+        for (String file : files) {
+            if (!file.startsWith(mPrefix) || !file.endsWith(".xml"))
+                continue;
+            try {
+                int id = Integer.parseInt(file.substring(mPrefix.length(), file.length() - 4));
+                ids[count++] = id;
+            } catch (NumberFormatException e) {
+                Log.w(TAG_UNITY, "Unexpected notification data file " + file);
+            }
+        }
+
+        return Arrays.copyOf(ids, count);
+    }
+
+    private static ByteBuffer decode(String data) {
+        if (data == null || data.length() == 0)
+            return null;
+        try {
+            return ByteBuffer.wrap(Base64.decode(data, 0));
+        } catch (IllegalArgumentException e) {
+            Log.e(TAG_UNITY, "Failed to decode saved notification", e);
+            return null;
+        }
+    }
+}
@@ -0,0 +1,589 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.KEY_CHANNEL_ID;
+import static com.unity.androidnotifications.UnityNotificationManager.KEY_FIRE_TIME;
+import static com.unity.androidnotifications.UnityNotificationManager.KEY_ID;
+import static com.unity.androidnotifications.UnityNotificationManager.KEY_REPEAT_INTERVAL;
+import static com.unity.androidnotifications.UnityNotificationManager.NOTIFICATION_IDS_SHARED_PREFS;
+import static com.unity.androidnotifications.UnityNotificationManager.NOTIFICATION_IDS_SHARED_PREFS_KEY;
+import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
+
+import android.app.Notification;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+class UnityNotificationRegistry {
+    /*
+        Scheduled notifications: ID, fire time, repeat interval, channel and group of each, enough to know what is scheduled
+        and to find notifications by channel or group without deserializing the notifications themselves.
+        Changes are recorded as deltas and written to a log file on commit, so that changing one notification
+        does not rewrite all of them. Log records are:
+          byte operation, int notification ID and, for put, long fire time, long repeat interval, channel ID, group, int CRC32 of the record.
+        Strings are written as short length (-1 for null) followed by UTF-8 bytes.
+        Records of version 1 have no group, group of such notifications is unknown (length -2) until they are saved again.
+        Once log grows bigger than the set itself, the set is written to a snapshot file and log is emptied.
+        Snapshot has a four byte magic number, int version, int entry count, entries laid out as put records
+        (without operation and CRC) and CRC32 of everything before it.
+        Pending changes are appended to the log even when a snapshot is written after them, so that the log holds
+        every change the snapshot has on top of the previous one. Snapshot is replaced before log is deleted, crash
+        in between is harmless, as replaying that log on the set it produced gives the same set (last operation on
+        each ID wins either way). Had pending changes gone only to the snapshot, replaying older log records
+        would bring back what they removed.
+        The set is guarded by the object itself, files by a separate lock, so that lookups don't wait for commit
+        to write and sync: commit takes the pending changes (or encodes the snapshot) under the first and writes
+        them holding only the second.
+    */
+    // magic stands for "Unity Mobile Notifications Ids"
+    private static final byte[] SNAPSHOT_MAGIC_NUMBER = new byte[] { 'U', 'M', 'N', 'I' };
+    private static final int SNAPSHOT_VERSION = 2;
+    private static final int SNAPSHOT_HEADER_SIZE = 12;
+    private static final byte OP_REMOVE = 2;
+    private static final byte OP_CLEAR = 3;
+    private static final byte OP_PUT_V1 = 4;
+    private static final byte OP_PUT = 5;
+    private static final int MIN_FOLD_RECORDS = 256;
+
+    // IDs taken over from old versions have no schedule until their notification is loaded
+    static final long UNKNOWN_FIRE_TIME = Long.MIN_VALUE;
+    // entries saved by version 1 have no group, compared by reference
+    static final String UNKNOWN_GROUP = new String("");
+
+    static final String REGISTRY_FILE_NAME = "unity_notifications.ids";
+
+    static final class Entry {
+        final int id;
+        final long fireTime;
+        final long repeatInterval;
+        final String channelId;
+        final String group;
+
+        Entry(int id, long fireTime, long repeatInterval, String channelId) {
+            this(id, fireTime, repeatInterval, channelId, null);
+        }
+
+        Entry(int id, long fireTime, long repeatInterval, String channelId, String group) {
+            this.id = id;
+            this.fireTime = fireTime;
+            this.repeatInterval = repeatInterval;
+            this.channelId = channelId;
+            this.group = group;
+        }
+
+        static Entry fromNotification(Notification notification) {
+            String channelId = UnityNotificationManager.getNotificationChannelId(notification);
+            if (channelId == null)
+                channelId = notification.extras.getString(KEY_CHANNEL_ID);
+            return new Entry(notification.extras.getInt(KEY_ID, -1), notification.extras.getLong(KEY_FIRE_TIME, -1),
+                notification.extras.getLong(KEY_REPEAT_INTERVAL, -1), channelId, notification.getGroup());
+        }
+
+        boolean hasSchedule() {
+            return fireTime != UNKNOWN_FIRE_TIME;
+        }
+
+        boolean hasGroup() {
+            return group != UNKNOWN_GROUP;
+        }
+
+        // whether alarm for this notification can still go off at given time
+        boolean isPending(long currentTime) {
+            return repeatInterval > 0 || fireTime > currentTime;
+        }
+
+        boolean sameAs(Entry other) {
+            return id == other.id && fireTime == other.fireTime && repeatInterval == other.repeatInterval
+                && equal(channelId, other.channelId) && hasGroup() == other.hasGroup() && equal(group, other.group);
+        }
+
+        private static boolean equal(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    }
+
+    private File mSnapshotFile;
+    private File mLogFile;
+    private SharedPreferences mLegacyPrefs;
+    private UnityNotificationIntMap<Entry> mEntries;
+    // secondary indices, notifications with unknown group are only in the last one
+    private HashMap<String, UnityNotificationIdSet> mByChannel;
+    private HashMap<String, UnityNotificationIdSet> mByGroup;
+    private UnityNotificationIdSet mUnknownGroup;
+    private ByteBuffer mPending = ByteBuffer.allocate(4096);
+    // file state, guarded by mFileLock
+    private final Object mFileLock = new Object();
+    private int mLogRecords;
+    private long mLogSize;
+
+    UnityNotificationRegistry(Context context) {
+        this(new File(context.getNoBackupFilesDir(), REGISTRY_FILE_NAME), context.getSharedPreferences(NOTIFICATION_IDS_SHARED_PREFS, Context.MODE_PRIVATE));
+    }
+
+    // legacy preferences are optional, if given, IDs from them are taken over when there are no files yet
+    UnityNotificationRegistry(File file, SharedPreferences legacyPrefs) {
+        mSnapshotFile = file;
+        mLogFile = new File(file.getPath() + ".log");
+        mLegacyPrefs = legacyPrefs;
+    }
+
+    synchronized int[] getIds() {
+        load();
+        return mEntries.keys();
+    }
+
+    synchronized Entry[] getEntries() {
+        load();
+        return mEntries.values().toArray(new Entry[0]);
+    }
+
+    synchronized int[] getIdsInChannel(String channelId) {
+        load();
+        return toArray(mByChannel.get(channelId));
+    }
+
+    synchronized int[] getIdsInGroup(String group) {
+        load();
+        return toArray(mByGroup.get(group));
+    }
+
+    // notifications saved by older version, these have to be loaded to find out their group
+    synchronized int[] getIdsWithUnknownGroup() {
+        load();
+        return toArray(mUnknownGroup);
+    }
+
+    private static int[] toArray(UnityNotificationIdSet set) {
+        return set == null ? new int[0] : set.toArray();
+    }
+
+    // returns null if there is no such notification
+    synchronized Entry get(int id) {
+        load();
+        return mEntries.get(id);
+    }
+
+    synchronized boolean contains(int id) {
+        load();
+        return mEntries.containsKey(id);
+    }
+
+    synchronized int size() {
+        load();
+        return mEntries.size();
+    }
+
+    // adds or replaces the entry, returns true if ID was not there
+    synchronized boolean put(Entry entry) {
+        load();
+        Entry old = putEntry(entry);
+        if (old == null || !old.sameAs(entry))
+            recordPut(entry);
+        return old == null;
+    }
+
+    // returns true if ID was there
+    synchronized boolean remove(int id) {
+        load();
+        if (removeEntry(id) == null)
+            return false;
+        ensurePending(5);
+        mPending.put(OP_REMOVE);
+        mPending.putInt(id);
+        return true;
+    }
+
+    synchronized void clear() {
+        load();
+        if (mEntries.isEmpty())
+            return;
+        clearEntries();
+        // nothing before clear matters anymore
+        mPending.clear();
+        mPending.put(OP_CLEAR);
+        mPending.putInt(0);
+    }
+
+    // Writes recorded changes to disk.
+    void commit() {
+        synchronized (mFileLock) {
+            ByteBuffer pending;
+            ByteBuffer snapshot = null;
+            synchronized (this) {
+                if (mEntries == null || mPending.position() == 0)
+                    return;
+                pending = mPending;
+                mPending = ByteBuffer.allocate(4096);
+                if (mLogRecords >= Math.max(MIN_FOLD_RECORDS, mEntries.size()))
+                    snapshot = encodeSnapshot();
+            }
+
+            try {
+                appendLog(pending);
+            } catch (IOException e) {
+                // changes stay pending and are retried on next commit
+                Log.e(TAG_UNITY, "Failed to save scheduled notification IDs", e);
+                synchronized (this) {
+                    restorePending(pending);
+                }
+                return;
+            }
+
+            if (snapshot != null) {
+                try {
+                    writeSnapshot(snapshot);
+                } catch (IOException e) {
+                    // changes are already in log, snapshot is tried again on next commit
+                    Log.e(TAG_UNITY, "Failed to save scheduled notification IDs", e);
+                }
+            }
+        }
+    }
+
+    // changes that failed to be written go before the ones recorded since
+    private void restorePending(ByteBuffer failed) {
+        ByteBuffer pending = ByteBuffer.allocate(Math.max(4096, failed.position() + mPending.position()));
+        failed.flip();
+        pending.put(failed);
+        mPending.flip();
+        pending.put(mPending);
+        mPending = pending;
+    }
+
+    private Entry putEntry(Entry entry) {
+        Entry old = mEntries.put(entry.id, entry);
+        if (old != null)
+            unindex(old);
+        addToIndex(mByChannel, entry.channelId, entry.id);
+        if (entry.hasGroup())
+            addToIndex(mByGroup, entry.group, entry.id);
+        else
+            mUnknownGroup.add(entry.id);
+        return old;
+    }
+
+    private Entry removeEntry(int id) {
+        Entry old = mEntries.remove(id);
+        if (old != null)
+            unindex(old);
+        return old;
+    }
+
+    private void clearEntries() {
+        mEntries.clear();
+        mByChannel.clear();
+        mByGroup.clear();
+        mUnknownGroup.clear();
+    }
+
+    private void unindex(Entry entry) {
+        removeFromIndex(mByChannel, entry.channelId, entry.id);
+        if (entry.hasGroup())
+            removeFromIndex(mByGroup, entry.group, entry.id);
+        else
+            mUnknownGroup.remove(entry.id);
+    }
+
+    private static void addToIndex(HashMap<String, UnityNotificationIdSet> index, String key, int id) {
+        if (key == null)
+            return;
+        UnityNotificationIdSet ids = index.get(key);
+        if (ids == null) {
+            ids = new UnityNotificationIdSet();
+            index.put(key, ids);
+        }
+        ids.add(id);
+    }
+
+    private static void removeFromIndex(HashMap<String, UnityNotificationIdSet> index, String key, int id) {
+        if (key == null)
+            return;
+        UnityNotificationIdSet ids = index.get(key);
+        if (ids != null && ids.remove(id) && ids.size() == 0)
+            index.remove(key);
+    }
+
+    private void recordPut(Entry entry) {
+        byte[] channel = toBytes(entry.channelId);
+        byte[] group = toBytes(entry.group);
+        ensurePending(1 + entrySize(channel, group) + 4);
+        int start = mPending.position();
+        mPending.put(OP_PUT);
+        writeEntry(mPending, entry, channel, group);
+        CRC32 crc = new CRC32();
+        crc.update(mPending.array(), start, mPending.position() - start);
+        mPending.putInt((int)crc.getValue());
+    }
+
+    private void ensurePending(int size) {
+        if (mPending.remaining() >= size)
+            return;
+        ByteBuffer pending = ByteBuffer.allocate(Math.max(mPending.capacity() * 2, mPending.position() + size));
+        mPending.flip();
+        pending.put(mPending);
+        mPending = pending;
+    }
+
+    private static byte[] toBytes(String s) {
+        return s == null || s == UNKNOWN_GROUP ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static int entrySize(byte[] channel, byte[] group) {
+        return 4 + 8 + 8 + 2 + (channel == null ? 0 : channel.length) + 2 + (group == null ? 0 : group.length);
+    }
+
+    private static void writeEntry(ByteBuffer out, Entry entry, byte[] channel, byte[] group) {
+        out.putInt(entry.id);
+        out.putLong(entry.fireTime);
+        out.putLong(entry.repeatInterval);
+        writeString(out, channel);
+        if (entry.hasGroup())
+            writeString(out, group);
+        else
+            out.putShort((short)-2);
+    }
+
+    private static void writeString(ByteBuffer out, byte[] s) {
+        if (s == null) {
+            out.putShort((short)-1);
+        } else {
+            out.putShort((short)s.length);
+            out.put(s);
+        }
+    }
+
+    private static Entry readEntry(ByteBuffer in, boolean hasGroup) {
+        int id = in.getInt();
+        long fireTime = in.getLong();
+        long repeatInterval = in.getLong();
+        String channelId = readString(in);
+        String group = hasGroup ? readString(in) : UNKNOWN_GROUP;
+        return new Entry(id, fireTime, repeatInterval, channelId, group);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getShort();
+        if (length == -2)
+            return UNKNOWN_GROUP;
+        if (length < 0)
+            return null;
+        String s = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        in.position(in.position() + length);
+        return s;
+    }
+
+    private void load() {
+        if (mEntries != null)
+            return;
+        mEntries = new UnityNotificationIntMap<>();
+        mByChannel = new HashMap<>();
+        mByGroup = new HashMap<>();
+        mUnknownGroup = new UnityNotificationIdSet();
+        boolean haveSnapshot = mSnapshotFile.exists();
+        if (!haveSnapshot && !mLogFile.exists()) {
+            migrateLegacyIds();
+            return;
+        }
+
+        try {
+            if (haveSnapshot && !readSnapshot())
+                Log.e(TAG_UNITY, "Scheduled notification IDs are corrupted, relying on log only");
+            if (mLogFile.exists())
+                readLog();
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to load scheduled notification IDs", e);
+        }
+    }
+
+    private void migrateLegacyIds() {
+        if (mLegacyPrefs == null)
+            return;
+        Set<String> legacyIds = mLegacyPrefs.getStringSet(NOTIFICATION_IDS_SHARED_PREFS_KEY, null);
+        if (legacyIds == null)
+            return;
+        for (String id : legacyIds) {
+            try {
+                int notificationId = Integer.parseInt(id);
+                putEntry(new Entry(notificationId, UNKNOWN_FIRE_TIME, 0, null, UNKNOWN_GROUP));
+            } catch (NumberFormatException e) {
+                Log.e(TAG_UNITY, "Invalid scheduled notification ID " + id);
+            }
+        }
+
+        try {
+            writeSnapshot(encodeSnapshot());
+            mLegacyPrefs.edit().clear().apply();
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to migrate scheduled notification IDs", e);
+        }
+    }
+
+    private static ByteBuffer readFile(FileChannel channel) throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException("File too big");
+        ByteBuffer data = ByteBuffer.allocate((int)size);
+        while (data.hasRemaining()) {
+            if (channel.read(data) < 0)
+                break;
+        }
+        data.flip();
+        return data;
+    }
+
+    private boolean readSnapshot() throws IOException {
+        try (FileChannel channel = new RandomAccessFile(mSnapshotFile, "r").getChannel()) {
+            ByteBuffer data = readFile(channel);
+            int size = data.limit();
+            if (size < SNAPSHOT_HEADER_SIZE + 4)
+                return false;
+            CRC32 crc = new CRC32();
+            crc.update(data.array(), 0, size - 4);
+            if (data.getInt(size - 4) != (int)crc.getValue())
+                return false;
+            for (int i = 0; i < SNAPSHOT_MAGIC_NUMBER.length; ++i) {
+                if (data.get() != SNAPSHOT_MAGIC_NUMBER[i])
+                    return false;
+            }
+            int version = data.getInt();
+            int count = data.getInt();
+            if (version < 1 || version > SNAPSHOT_VERSION || count < 0)
+                return false;
+
+            data.limit(size - 4);
+            for (int i = 0; i < count; ++i)
+                putEntry(readEntry(data, version >= 2));
+            return true;
+        } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+            clearEntries();
+            return false;
+        }
+    }
+
+    private void readLog() throws IOException {
+        try (FileChannel channel = new RandomAccessFile(mLogFile, "rw").getChannel()) {
+            ByteBuffer data = readFile(channel);
+            int records = 0;
+            int valid = 0;
+            CRC32 crc = new CRC32();
+            try {
+                while (data.hasRemaining()) {
+                    int start = data.position();
+                    byte op = data.get();
+                    if (op == OP_PUT || op == OP_PUT_V1) {
+                        Entry entry = readEntry(data, op == OP_PUT);
+                        crc.reset();
+                        crc.update(data.array(), start, data.position() - start);
+                        if (data.getInt() != (int)crc.getValue())
+                            break;
+                        putEntry(entry);
+                    } else if (op == OP_REMOVE) {
+                        removeEntry(data.getInt());
+                    } else if (op == OP_CLEAR) {
+                        data.getInt();
+                        clearEntries();
+                    } else {
+                        break;
+                    }
+                    ++records;
+                    valid = data.position();
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                // torn record at the end, dropped below
+            }
+
+            mLogRecords = records;
+            mLogSize = valid;
+            if (valid < channel.size()) {
+                Log.w(TAG_UNITY, "Dropping incomplete records at the end of scheduled notification ID log");
+                channel.truncate(valid);
+            }
+        }
+    }
+
+    private void appendLog(ByteBuffer records) throws IOException {
+        try (FileChannel channel = new RandomAccessFile(mLogFile, "rw").getChannel()) {
+            ByteBuffer pending = records.duplicate();
+            pending.flip();
+            long offset = mLogSize;
+            // anything past known records is a leftover of failed write
+            if (channel.size() > offset)
+                channel.truncate(offset);
+            while (pending.hasRemaining())
+                offset += channel.write(pending, offset);
+            channel.force(false);
+            mLogSize = offset;
+        }
+        mLogRecords += countRecords(records);
+    }
+
+    private static int countRecords(ByteBuffer pending) {
+        int records = 0;
+        int position = 0;
+        while (position < pending.position()) {
+            byte op = pending.get(position);
+            if (op == OP_PUT) {
+                int channelLength = Math.max(0, pending.getShort(position + 1 + 4 + 8 + 8));
+                int groupLength = Math.max(0, pending.getShort(position + 1 + 4 + 8 + 8 + 2 + channelLength));
+                position += 1 + 4 + 8 + 8 + 2 + channelLength + 2 + groupLength + 4;
+            } else {
+                position += 5;
+            }
+            ++records;
+        }
+        return records;
+    }
+
+    private ByteBuffer encodeSnapshot() {
+        ByteBuffer data = ByteBuffer.allocate(SNAPSHOT_HEADER_SIZE + 64 * mEntries.size() + 4);
+        data.put(SNAPSHOT_MAGIC_NUMBER);
+        data.putInt(SNAPSHOT_VERSION);
+        data.putInt(mEntries.size());
+        for (Entry entry : mEntries.values()) {
+            byte[] channel = toBytes(entry.channelId);
+            byte[] group = toBytes(entry.group);
+            int size = entrySize(channel, group);
+            if (data.remaining() < size + 4) {
+                ByteBuffer bigger = ByteBuffer.allocate(data.capacity() * 2 + size);
+                data.flip();
+                bigger.put(data);
+                data = bigger;
+            }
+            writeEntry(data, entry, channel, group);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.position());
+        data.putInt((int)crc.getValue());
+        data.flip();
+        return data;
+    }
+
+    private void writeSnapshot(ByteBuffer data) throws IOException {
+        File tmp = new File(mSnapshotFile.getPath() + ".tmp");
+        try (FileChannel channel = new RandomAccessFile(tmp, "rw").getChannel()) {
+            channel.truncate(0);
+            long offset = 0;
+            while (data.hasRemaining())
+                offset += channel.write(data, offset);
+            channel.force(false);
+        }
+        if (!tmp.renameTo(mSnapshotFile)) {
+            tmp.delete();
+            throw new IOException("Failed to write scheduled notification IDs " + mSnapshotFile);
+        }
+
+        mLogFile.delete();
+        mLogRecords = 0;
+        mLogSize = 0;
+    }
+}
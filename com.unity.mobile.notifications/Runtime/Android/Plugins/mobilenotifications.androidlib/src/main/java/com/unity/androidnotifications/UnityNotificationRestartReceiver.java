@@ -4,13 +4,22 @@ import android.app.Notification;
 import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.Intent;
+import android.content.SharedPreferences;
 import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.SystemClock;
 import android.util.Log;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static com.unity.androidnotifications.UnityNotificationManager.KEY_FIRE_TIME;
 import static com.unity.androidnotifications.UnityNotificationManager.KEY_ID;
@@ -18,23 +27,217 @@ import static com.unity.androidnotifications.UnityNotificationManager.KEY_REPEAT
 import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
 
 public class UnityNotificationRestartReceiver extends BroadcastReceiver {
+    /*
+        Rescheduling after reboot may take long with many saved notifications, while broadcast has limited time.
+        Notifications are taken nearest fire time first from the registry, so that the ones due soon are not stuck
+        behind the ones due next month. Expired ones are dropped without even decoding them.
+        Notifications are decoded by a small thread pool, alarms are set one by one as decoding completes.
+        Once the time budget is spent, progress is saved and the work continues in a new broadcast sent to ourselves.
+        If process gets killed in the middle, progress is picked up next time app starts.
+        Progress is the (fire time, ID) of the last notification done, fire times of repeating notifications are
+        advanced relative to the time rescheduling started, so the order stays the same across continuations.
+    */
     private static final long EXPIRATION_TRESHOLD = 600000;  // 10 minutes
+    private static final long RESCHEDULE_TIME_BUDGET = 8000;  // broadcast gets 10 seconds, leave time to finish
+    private static final int PROGRESS_SAVE_INTERVAL = 16;
+    private static final String RESCHEDULE_PROGRESS_PREFS = "UNITY_NOTIFICATIONS_RESCHEDULE";
+    private static final String KEY_IN_PROGRESS = "inProgress";
+    private static final String KEY_START_TIME = "startTime";
+    private static final String KEY_LAST_FIRE_TIME = "lastFireTime";
+    private static final String KEY_LAST_RESCHEDULED_ID = "lastId";
+    static final String ACTION_CONTINUE_RESCHEDULING = "com.unity.androidnotifications.CONTINUE_RESCHEDULING";
+
+    private static final AtomicBoolean sRescheduling = new AtomicBoolean(false);
 
     @Override
     public void onReceive(Context context, Intent received_intent) {
-        Log.d(TAG_UNITY, "Rescheduling notifications after restart");
-        if (Intent.ACTION_BOOT_COMPLETED.equals(received_intent.getAction())) {
-            AsyncTask.execute(() -> { rescheduleSavedNotifications(context); });
+        String action = received_intent.getAction();
+        boolean boot = Intent.ACTION_BOOT_COMPLETED.equals(action);
+        if (!boot && !ACTION_CONTINUE_RESCHEDULING.equals(action))
+            return;
+
+        Log.d(TAG_UNITY, boot ? "Rescheduling notifications after restart" : "Continuing to reschedule notifications after restart");
+        final PendingResult result = goAsync();
+        final long deadline = SystemClock.elapsedRealtime() + RESCHEDULE_TIME_BUDGET;
+        final long receiveTime = System.currentTimeMillis();
+        AsyncTask.execute(() -> {
+            try {
+                // prefs are loaded and written here, not to block the main thread on disk
+                if (boot)
+                    startRescheduling(context, receiveTime);
+                if (!rescheduleSavedNotifications(context, deadline))
+                    continueRescheduling(context);
+            } finally {
+                result.finish();
+            }
+        });
+    }
+
+    private static void startRescheduling(Context context, long startTime) {
+        getProgress(context).edit().clear().putBoolean(KEY_IN_PROGRESS, true).putLong(KEY_START_TIME, startTime).commit();
+    }
+
+    // Called when app starts, continues rescheduling if process was killed in the middle of it.
+    static void resumeInterruptedRescheduling(Context context) {
+        if (!sRescheduling.get() && getProgress(context).getBoolean(KEY_IN_PROGRESS, false))
+            continueRescheduling(context);
+    }
+
+    private static void continueRescheduling(Context context) {
+        Intent intent = new Intent(context, UnityNotificationRestartReceiver.class);
+        intent.setAction(ACTION_CONTINUE_RESCHEDULING);
+        context.sendBroadcast(intent);
+    }
+
+    private static SharedPreferences getProgress(Context context) {
+        return context.getSharedPreferences(RESCHEDULE_PROGRESS_PREFS, Context.MODE_PRIVATE);
+    }
+
+    private static class DecodeResult {
+        final UnityNotificationRegistry.Entry entry;
+        final long fireTime;
+        final Future<Notification.Builder> builder;
+
+        DecodeResult(UnityNotificationRegistry.Entry entry, long fireTime, Future<Notification.Builder> builder) {
+            this.entry = entry;
+            this.fireTime = fireTime;
+            this.builder = builder;
         }
     }
 
-    private static void rescheduleSavedNotifications(Context context) {
-        UnityNotificationManager manager = UnityNotificationManager.getNotificationManagerImpl(context);
-        List<Notification.Builder> saved_notifications = manager.loadSavedNotifications();
+    // Fire time used for ordering, next repetition for repeating notifications.
+    // Notifications with unknown schedule go first, they have to be read anyway.
+    static long getNextFireTime(UnityNotificationRegistry.Entry entry, long startTime) {
+        if (!entry.hasSchedule() || entry.repeatInterval <= 0 || entry.fireTime >= startTime)
+            return entry.fireTime;
+        long repetitions = (startTime - entry.fireTime + entry.repeatInterval - 1) / entry.repeatInterval;
+        return entry.fireTime + repetitions * entry.repeatInterval;
+    }
+
+    // Returns false if deadline (elapsed realtime) was reached before all notifications were rescheduled.
+    private static boolean rescheduleSavedNotifications(Context context, long deadline) {
+        if (!sRescheduling.compareAndSet(false, true)) {
+            Log.d(TAG_UNITY, "Notifications are already being rescheduled");
+            return true;
+        }
+
+        try {
+            UnityNotificationManager manager = UnityNotificationManager.getNotificationManagerImpl(context);
+            SharedPreferences progress = getProgress(context);
+            long startTime = progress.getLong(KEY_START_TIME, -1);
+            if (startTime < 0) {
+                startTime = System.currentTimeMillis();
+                progress.edit().putLong(KEY_START_TIME, startTime).commit();
+            }
+
+            final long currentTime = System.currentTimeMillis();
+            ArrayList<UnityNotificationRegistry.Entry> entries = new ArrayList<>();
+            for (UnityNotificationRegistry.Entry entry : manager.getNotificationRegistry().getEntries()) {
+                if (entry.hasSchedule() && entry.repeatInterval <= 0 && currentTime - entry.fireTime >= EXPIRATION_TRESHOLD) {
+                    Log.d(TAG_UNITY, "Notification expired, not rescheduling, ID: " + entry.id);
+                    manager.removeSavedNotification(entry.id);
+                    continue;
+                }
+                entries.add(entry);
+            }
+
+            final long referenceTime = startTime;
+            Collections.sort(entries, (a, b) -> {
+                int result = Long.compare(getNextFireTime(a, referenceTime), getNextFireTime(b, referenceTime));
+                return result != 0 ? result : Integer.compare(a.id, b.id);
+            });
+
+            int next = 0;
+            if (progress.contains(KEY_LAST_RESCHEDULED_ID)) {
+                long lastFireTime = progress.getLong(KEY_LAST_FIRE_TIME, Long.MIN_VALUE);
+                int lastId = progress.getInt(KEY_LAST_RESCHEDULED_ID, 0);
+                while (next < entries.size()) {
+                    UnityNotificationRegistry.Entry entry = entries.get(next);
+                    long fireTime = getNextFireTime(entry, referenceTime);
+                    if (fireTime > lastFireTime || (fireTime == lastFireTime && entry.id > lastId))
+                        break;
+                    ++next;
+                }
+            }
+
+            if (!rescheduleNotifications(manager, entries, next, referenceTime, deadline, progress))
+                return false;
+            progress.edit().clear().commit();
+            return true;
+        } finally {
+            sRescheduling.set(false);
+        }
+    }
+
+    private static boolean rescheduleNotifications(UnityNotificationManager manager, List<UnityNotificationRegistry.Entry> entries, int next,
+                                                   long referenceTime, long deadline, SharedPreferences progress) {
+        int threads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        int maxInFlight = 4 * threads;
+        ExecutorService decoder = Executors.newFixedThreadPool(threads);
+        ArrayDeque<DecodeResult> inFlight = new ArrayDeque<>(maxInFlight);
         Date currentDate = Calendar.getInstance().getTime();
+        int done = 0;
+        // lateness of notifications whose time has passed while device was off, they are sent right away
+        int late = 0;
+        long totalLateness = 0, maxLateness = 0;
+        try {
+            while (true) {
+                while (next < entries.size() && inFlight.size() < maxInFlight) {
+                    final UnityNotificationRegistry.Entry entry = entries.get(next++);
+                    inFlight.add(new DecodeResult(entry, getNextFireTime(entry, referenceTime), decoder.submit(() -> manager.deserializeNotificationBuilder(entry.id))));
+                }
+                DecodeResult decoded = inFlight.poll();
+                if (decoded == null)
+                    break;
 
-        for (Notification.Builder notificationBuilder : saved_notifications) {
-            rescheduleNotification(manager, currentDate, notificationBuilder);
+                // alarms are set on this thread only, in order
+                Notification.Builder builder = getDecoded(decoded);
+                if (builder == null) {
+                    manager.removeSavedNotification(decoded.entry.id);
+                } else if (rescheduleNotification(manager, currentDate, builder) && decoded.entry.repeatInterval <= 0 && decoded.fireTime <= currentDate.getTime()) {
+                    long lateness = System.currentTimeMillis() - decoded.fireTime;
+                    ++late;
+                    totalLateness += lateness;
+                    maxLateness = Math.max(maxLateness, lateness);
+                }
+
+                ++done;
+                boolean outOfTime = SystemClock.elapsedRealtime() >= deadline;
+                if (outOfTime || done % PROGRESS_SAVE_INTERVAL == 0) {
+                    manager.commitNotificationStorage();
+                    progress.edit()
+                        .putBoolean(KEY_IN_PROGRESS, true)
+                        .putLong(KEY_LAST_FIRE_TIME, decoded.fireTime)
+                        .putInt(KEY_LAST_RESCHEDULED_ID, decoded.entry.id)
+                        .commit();
+                }
+                if (outOfTime && (next < entries.size() || !inFlight.isEmpty())) {
+                    Log.d(TAG_UNITY, "Rescheduled " + done + " notifications, out of time, continuing later");
+                    logLateness(late, totalLateness, maxLateness);
+                    return false;
+                }
+            }
+        } finally {
+            decoder.shutdownNow();
+        }
+
+        manager.commitNotificationStorage();
+        Log.d(TAG_UNITY, "Rescheduled " + done + " notifications");
+        logLateness(late, totalLateness, maxLateness);
+        return true;
+    }
+
+    private static void logLateness(int late, long totalLateness, long maxLateness) {
+        if (late > 0)
+            Log.d(TAG_UNITY, "Sent " + late + " notifications missed while device was off, late by " + (totalLateness / late) + " ms on average, " + maxLateness + " ms at most, " + SystemClock.elapsedRealtime() + " ms after boot");
+    }
+
+    private static Notification.Builder getDecoded(DecodeResult decoded) {
+        try {
+            return decoded.builder.get();
+        } catch (Exception e) {
+            Log.e(TAG_UNITY, "Failed to load saved notification " + decoded.entry.id, e);
+            return null;
         }
     }
 
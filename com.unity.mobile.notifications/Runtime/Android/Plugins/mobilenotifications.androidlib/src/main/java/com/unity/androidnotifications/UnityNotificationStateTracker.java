@@ -0,0 +1,67 @@
+package com.unity.androidnotifications;
+
+class UnityNotificationStateTracker {
+    /*
+        What this process knows about each notification: alarm set for it, alarm received, shown in status bar.
+        Housekeeping reconciles this with a single snapshot of active notifications, instead of asking alarm
+        manager about every ID. State is only kept in memory, so notifications scheduled by a previous process
+        (or app version) are unknown, those get probed once and are tracked from then on.
+    */
+    static final int STATE_UNKNOWN = 0;
+    static final int STATE_ARMED = 1;
+    static final int STATE_FIRED = 2;
+    static final int STATE_DISPLAYED = 3;
+
+    private static final Byte ARMED = (byte)STATE_ARMED;
+    private static final Byte FIRED = (byte)STATE_FIRED;
+    private static final Byte DISPLAYED = (byte)STATE_DISPLAYED;
+
+    private UnityNotificationIntMap<Byte> mStates = new UnityNotificationIntMap<>();
+    private long mProbed;
+    private long mReconciled;
+
+    void markArmed(int id) {
+        mStates.put(id, ARMED);
+    }
+
+    // Lasts only until notification is shown, or forgotten if that fails, so that housekeeping can check it again.
+    void markFired(int id) {
+        mStates.put(id, FIRED);
+    }
+
+    // Repeating notification has its alarm still set after being shown.
+    void markDisplayed(int id, boolean repeating) {
+        mStates.put(id, repeating ? ARMED : DISPLAYED);
+    }
+
+    void forget(int id) {
+        mStates.remove(id);
+    }
+
+    void clear() {
+        mStates.clear();
+    }
+
+    int get(int id) {
+        Byte state = mStates.get(id);
+        return state == null ? STATE_UNKNOWN : state;
+    }
+
+    // Drops states for notifications that are neither saved nor shown anymore.
+    void retain(UnityNotificationIdSet saved, UnityNotificationIdSet active) {
+        for (int id : mStates.keys()) {
+            if (!saved.contains(id) && !active.contains(id))
+                mStates.remove(id);
+        }
+    }
+
+    synchronized void countPass(int probed, int reconciled) {
+        mProbed += probed;
+        mReconciled += reconciled;
+    }
+
+    // Returns { IDs checked with alarm manager, IDs decided from tracked state }.
+    synchronized long[] getCounts() {
+        return new long[] { mProbed, mReconciled };
+    }
+}
@@ -0,0 +1,20 @@
+package com.unity.androidnotifications;
+
+import java.nio.ByteBuffer;
+
+// Persistent storage for serialized notifications, so that they can be recreated after app is killed or device rebooted.
+// Data is passed as raw bytes, from position to limit of the buffer.
+interface UnityNotificationStore {
+    void put(int id, ByteBuffer data);
+
+    // returns null if there is nothing saved for given ID, returned buffer may be read-only
+    ByteBuffer get(int id);
+
+    void delete(int id);
+
+    // IDs of everything saved, including notifications that are no longer scheduled but were not deleted
+    int[] getIds();
+
+    // makes changes done so far durable, until then they may be lost if device shuts down
+    void commit();
+}
@@ -0,0 +1,180 @@
+package com.unity.androidnotifications;
+
+import static com.unity.androidnotifications.UnityNotificationManager.TAG_UNITY;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+class UnityNotificationStringDictionary {
+    /*
+        Strings repeated across saved notifications (icons, channel IDs, groups and such) are saved here once,
+        saved notifications refer to them by index. Each string is decoded once and the same String is used by
+        all notifications loaded afterwards.
+        File is append only: four byte magic number, int version, then records of short length, UTF-8 bytes and
+        int CRC32 of both. Strings are never removed, index has to stay valid as long as any saved notification uses it.
+        New strings are rare, each one is flushed right away, before notification referring to it is saved,
+        so a torn record at the end is not referred to and can be dropped. Any other damage makes dictionary
+        read only, as appending would give lost indices to different strings.
+    */
+    // magic stands for "Unity Mobile Notifications Strings"
+    private static final byte[] MAGIC_NUMBER = new byte[] { 'U', 'M', 'N', 'S' };
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int MAX_STRINGS = 1024;
+    private static final int MAX_STRING_BYTES = 256;  // longer strings are unlikely to repeat
+
+    static final String DICTIONARY_FILE_NAME = "unity_notifications.strings";
+
+    private File mFile;
+    private ArrayList<String> mStrings;
+    private HashMap<String, Integer> mIndices;
+    private long mSize;
+    private boolean mReadOnly;
+
+    UnityNotificationStringDictionary(Context context) {
+        this(new File(context.getNoBackupFilesDir(), DICTIONARY_FILE_NAME));
+    }
+
+    UnityNotificationStringDictionary(File file) {
+        mFile = file;
+    }
+
+    // returns index of the string, adding it if not there yet, -1 if string has to be saved as is
+    synchronized int indexOf(String s) {
+        load();
+        Integer index = mIndices.get(s);
+        if (index != null)
+            return index;
+        if (mReadOnly || mStrings.size() >= MAX_STRINGS)
+            return -1;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES)
+            return -1;
+
+        try {
+            append(bytes);
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to save string for notifications", e);
+            return -1;
+        }
+
+        index = mStrings.size();
+        mStrings.add(s);
+        mIndices.put(s, index);
+        return index;
+    }
+
+    // returns null if there is no string with given index
+    synchronized String get(int index) {
+        load();
+        if (index < 0 || index >= mStrings.size())
+            return null;
+        return mStrings.get(index);
+    }
+
+    synchronized int size() {
+        load();
+        return mStrings.size();
+    }
+
+    private void load() {
+        if (mStrings != null)
+            return;
+        mStrings = new ArrayList<>();
+        mIndices = new HashMap<>();
+        if (!mFile.exists())
+            return;
+
+        try (FileChannel channel = new RandomAccessFile(mFile, "rw").getChannel()) {
+            long fileSize = channel.size();
+            if (fileSize > Integer.MAX_VALUE)
+                throw new IOException("File too big");
+            ByteBuffer data = ByteBuffer.allocate((int)fileSize);
+            while (data.hasRemaining()) {
+                if (channel.read(data, data.position()) < 0)
+                    break;
+            }
+            data.flip();
+
+            if (data.remaining() < HEADER_SIZE) {
+                // creation was interrupted, nothing could refer to it
+                channel.truncate(0);
+                return;
+            }
+            for (int i = 0; i < MAGIC_NUMBER.length; ++i) {
+                if (data.get() != MAGIC_NUMBER[i])
+                    throw new IOException("Not a string dictionary");
+            }
+            if (data.getInt() != VERSION)
+                throw new IOException("Unsupported string dictionary version");
+
+            CRC32 crc = new CRC32();
+            int valid = data.position();
+            try {
+                while (data.hasRemaining()) {
+                    int start = data.position();
+                    int length = data.getShort();
+                    if (length < 0)
+                        throw new IOException("Corrupted string dictionary");
+                    String s = new String(data.array(), data.position(), length, StandardCharsets.UTF_8);
+                    data.position(data.position() + length);
+                    crc.reset();
+                    crc.update(data.array(), start, data.position() - start);
+                    if (data.getInt() != (int)crc.getValue())
+                        throw new IOException("Corrupted string dictionary");
+                    mIndices.put(s, mStrings.size());
+                    mStrings.add(s);
+                    valid = data.position();
+                }
+            } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+                // torn record at the end, dropped below
+            }
+
+            mSize = valid;
+            if (valid < fileSize) {
+                Log.w(TAG_UNITY, "Dropping incomplete string at the end of notification string dictionary");
+                channel.truncate(valid);
+            }
+        } catch (IOException e) {
+            Log.e(TAG_UNITY, "Failed to load notification string dictionary", e);
+            mReadOnly = true;
+        }
+    }
+
+    private void append(byte[] bytes) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate((mSize == 0 ? HEADER_SIZE : 0) + 2 + bytes.length + 4);
+        if (mSize == 0) {
+            record.put(MAGIC_NUMBER);
+            record.putInt(VERSION);
+        }
+        int start = record.position();
+        record.putShort((short)bytes.length);
+        record.put(bytes);
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), start, record.position() - start);
+        record.putInt((int)crc.getValue());
+        record.flip();
+
+        try (FileChannel channel = new RandomAccessFile(mFile, "rw").getChannel()) {
+            long offset = mSize;
+            // anything past known records is a leftover of failed write
+            if (channel.size() > offset)
+                channel.truncate(offset);
+            while (record.hasRemaining())
+                offset += channel.write(record, offset);
+            channel.force(false);
+            mSize = offset;
+        }
+    }
+}
@@ -1,10 +1,11 @@
 package com.unity.androidnotifications;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import android.app.Notification;
@@ -45,13 +46,47 @@ class UnityNotificationUtilities {
         The serialized BLOB starts with a four byte magic number descibing serialization type, followed by an integer version.
         IMPORTANT: IF YOU DO A CHANGE THAT AFFECTS THE LAYOUT, BUMP THE VERSION, AND ENSURE OLD VERSION STILL DESERIALIZES. ADD TEST.
         In real life app can get updated having old serialized notifications present, so we should be able to deserialize them.
+        Since version 4 the layout is compact: after the header comes the ID and a bitmap of fields present and boolean flags,
+        bit index being the tag of the field. Only present fields follow, in the order of their tags,
+        numbers as variable length integers and strings prefixed by variable length byte count. Default values are omitted.
+        Strings likely to repeat (icons, channel, group, sort key) can instead be a negative number,
+        referring to a string in the dictionary shared by all saved notifications.
     */
     // magic stands for "Unity Mobile Notifications Notification"
     static final byte[] UNITY_MAGIC_NUMBER = new byte[] { 'U', 'M', 'N', 'N'};
     private static final byte[] UNITY_MAGIC_NUMBER_PARCELLED = new byte[] { 'U', 'M', 'N', 'P'};
-    private static final int NOTIFICATION_SERIALIZATION_VERSION = 3;
+    private static final int NOTIFICATION_SERIALIZATION_VERSION = 4;
     private static final int INTENT_SERIALIZATION_VERSION = 0;
 
+    // field tags since version 4
+    static final int FIELD_TITLE = 1;
+    static final int FIELD_TEXT = 1 << 1;
+    static final int FIELD_SMALL_ICON = 1 << 2;
+    static final int FIELD_LARGE_ICON = 1 << 3;
+    static final int FIELD_FIRE_TIME = 1 << 4;
+    static final int FIELD_REPEAT_INTERVAL = 1 << 5;
+    static final int FIELD_BIG_TEXT = 1 << 6;
+    static final int FIELD_INTENT_DATA = 1 << 7;
+    static final int FIELD_BIG_PICTURE = 1 << 8;
+    static final int FIELD_BIG_LARGE_ICON = 1 << 9;
+    static final int FIELD_BIG_CONTENT_TITLE = 1 << 10;
+    static final int FIELD_BIG_CONTENT_DESCRIPTION = 1 << 11;
+    static final int FIELD_BIG_SUMMARY_TEXT = 1 << 12;
+    static final int FIELD_CHANNEL_ID = 1 << 13;
+    static final int FIELD_COLOR = 1 << 14;
+    static final int FIELD_NUMBER = 1 << 15;
+    static final int FIELD_GROUP = 1 << 16;
+    static final int FIELD_GROUP_ALERT_BEHAVIOR = 1 << 17;
+    static final int FIELD_SORT_KEY = 1 << 18;
+    static final int FIELD_WHEN = 1 << 19;
+    static final int FLAG_USES_CHRONOMETER = 1 << 24;
+    static final int FLAG_HIDE_IN_FOREGROUND = 1 << 26;
+    static final int FLAG_BIG_SHOW_WHEN_COLLAPSED = 1 << 27;
+    static final int FLAG_AUTO_CANCEL = 1 << 28;
+    static final int FLAG_GROUP_SUMMARY = 1 << 29;
+    static final int KNOWN_FIELDS_AND_FLAGS = (1 << 20) - 1 | FLAG_USES_CHRONOMETER | FLAG_HIDE_IN_FOREGROUND
+        | FLAG_BIG_SHOW_WHEN_COLLAPSED | FLAG_AUTO_CANCEL | FLAG_GROUP_SUMMARY;
+
     static final String SAVED_NOTIFICATION_PRIMARY_KEY = "data";
     static final String SAVED_NOTIFICATION_FALLBACK_KEY = "fallback.data";
 
@@ -83,37 +118,43 @@ class UnityNotificationUtilities {
        - otherwise serialize our stuff, since there is nothing more
     */
     protected static void serializeNotification(SharedPreferences prefs, Notification notification, boolean serializeParcel) {
+        ByteBuffer bytes = serializeNotification(notification, serializeParcel);
+        if (bytes == null)
+            return; // failed
+
+        SharedPreferences.Editor editor = prefs.edit().clear();
+        editor.putString(SAVED_NOTIFICATION_PRIMARY_KEY, Base64.encodeToString(bytes.array(), bytes.arrayOffset(), bytes.remaining(), 0));
+        editor.apply();
+    }
+
+    static ByteBuffer serializeNotification(Notification notification, boolean serializeParcel) {
+        return serializeNotification(notification, serializeParcel, null);
+    }
+
+    // returns null on failure, the buffer wraps the serialization buffer as is, without copying it
+    // strings dictionary is optional, without it all strings are saved in the notification itself
+    static ByteBuffer serializeNotification(Notification notification, boolean serializeParcel, UnityNotificationStringDictionary strings) {
         try {
-            String serialized;
-            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            ByteBufferOutputStream data = new ByteBufferOutputStream();
             DataOutputStream out = new DataOutputStream(data);
             if (serializeParcel) {
                 Intent intent = new Intent();
                 intent.putExtra(KEY_NOTIFICATION, notification);
-                if (serializeNotificationParcel(intent, out)) {
-                    out.close();
-                    byte[] bytes = data.toByteArray();
-                    serialized = Base64.encodeToString(bytes, 0, bytes.length, 0);
-                } else {
-                    return; // failed
-                }
+                if (!serializeNotificationParcel(intent, out))
+                    return null;
             }
             else {
-                if (serializeNotificationCustom(notification, out)) {
-                    out.flush();
-                    byte[] bytes = data.toByteArray();
-                    serialized = Base64.encodeToString(bytes, 0, bytes.length, 0);
-                } else {
-                    return; // failed
-                }
+                if (!serializeNotificationCustom(notification, out, strings))
+                    return null;
             }
 
-            SharedPreferences.Editor editor = prefs.edit().clear();
-            editor.putString(SAVED_NOTIFICATION_PRIMARY_KEY, serialized);
-            editor.apply();
+            out.close();
+            return data.toByteBuffer();
         } catch (Exception e) {
             Log.e(TAG_UNITY, "Failed to serialize notification", e);
         }
+
+        return null;
     }
 
     static boolean serializeNotificationParcel(Intent intent, DataOutputStream out) {
@@ -136,50 +177,94 @@ class UnityNotificationUtilities {
     }
 
     private static boolean serializeNotificationCustom(Notification notification, DataOutputStream out) {
+        return serializeNotificationCustom(notification, out, null);
+    }
+
+    private static boolean serializeNotificationCustom(Notification notification, DataOutputStream out, UnityNotificationStringDictionary strings) {
         try {
             out.write(UNITY_MAGIC_NUMBER);
             out.writeInt(NOTIFICATION_SERIALIZATION_VERSION);
 
-            // serialize extras
-            boolean showWhen = notification.extras.getBoolean(Notification.EXTRA_SHOW_WHEN, false);
-
-            out.writeInt(notification.extras.getInt(KEY_ID));
-            serializeString(out, notification.extras.getString(Notification.EXTRA_TITLE));
-            serializeString(out, notification.extras.getString(Notification.EXTRA_TEXT));
-            serializeString(out, notification.extras.getString(KEY_SMALL_ICON));
-            serializeString(out, notification.extras.getString(KEY_LARGE_ICON));
-            out.writeLong(notification.extras.getLong(KEY_FIRE_TIME, -1));
-            out.writeLong(notification.extras.getLong(KEY_REPEAT_INTERVAL, -1));
-            serializeString(out, notification.extras.getString(Notification.EXTRA_BIG_TEXT));
-            out.writeBoolean(notification.extras.getBoolean(Notification.EXTRA_SHOW_CHRONOMETER, false));
-            out.writeBoolean(showWhen);
-            serializeString(out, notification.extras.getString(KEY_INTENT_DATA));
-            out.writeBoolean(notification.extras.getBoolean(KEY_SHOW_IN_FOREGROUND, true));
-
-            String bigPicture = notification.extras.getString(KEY_BIG_PICTURE);
-            serializeString(out, bigPicture);
-            if (bigPicture != null && bigPicture.length() > 0) {
+            Bundle extras = notification.extras;
+            String title = extras.getString(Notification.EXTRA_TITLE);
+            String text = extras.getString(Notification.EXTRA_TEXT);
+            String smallIcon = extras.getString(KEY_SMALL_ICON);
+            String largeIcon = extras.getString(KEY_LARGE_ICON);
+            long fireTime = extras.getLong(KEY_FIRE_TIME, -1);
+            long repeatInterval = extras.getLong(KEY_REPEAT_INTERVAL, -1);
+            String bigText = extras.getString(Notification.EXTRA_BIG_TEXT);
+            String intentData = extras.getString(KEY_INTENT_DATA);
+            String bigPicture = extras.getString(KEY_BIG_PICTURE);
+            String bigLargeIcon = null, bigContentTitle = null, bigContentDesc = null, bigSummary = null;
+            if (!isEmpty(bigPicture)) {
                 // the following only need to be put in if big picture is there
-                serializeString(out, notification.extras.getString(KEY_BIG_LARGE_ICON));
-                serializeString(out, notification.extras.getString(KEY_BIG_CONTENT_TITLE));
-                serializeString(out, notification.extras.getString(KEY_BIG_CONTENT_DESCRIPTION));
-                serializeString(out, notification.extras.getString(KEY_BIG_SUMMARY_TEXT));
-                out.writeBoolean(notification.extras.getBoolean(KEY_BIG_SHOW_WHEN_COLLAPSED, false));
+                bigLargeIcon = extras.getString(KEY_BIG_LARGE_ICON);
+                bigContentTitle = extras.getString(KEY_BIG_CONTENT_TITLE);
+                bigContentDesc = extras.getString(KEY_BIG_CONTENT_DESCRIPTION);
+                bigSummary = extras.getString(KEY_BIG_SUMMARY_TEXT);
             }
-
-            serializeString(out, Build.VERSION.SDK_INT < Build.VERSION_CODES.O ? null : notification.getChannelId());
+            String channelId = Build.VERSION.SDK_INT < Build.VERSION_CODES.O ? null : notification.getChannelId();
             Integer color = UnityNotificationManager.getNotificationColor(notification);
-            out.writeBoolean(color != null);
+            String group = notification.getGroup();
+            int groupAlertBehavior = UnityNotificationManager.getNotificationGroupAlertBehavior(notification);
+            String sortKey = notification.getSortKey();
+            boolean showWhen = extras.getBoolean(Notification.EXTRA_SHOW_WHEN, false);
+
+            int fields = 0;
+            fields |= isEmpty(title) ? 0 : FIELD_TITLE;
+            fields |= isEmpty(text) ? 0 : FIELD_TEXT;
+            fields |= isEmpty(smallIcon) ? 0 : FIELD_SMALL_ICON;
+            fields |= isEmpty(largeIcon) ? 0 : FIELD_LARGE_ICON;
+            fields |= fireTime == -1 ? 0 : FIELD_FIRE_TIME;
+            fields |= repeatInterval == -1 ? 0 : FIELD_REPEAT_INTERVAL;
+            fields |= isEmpty(bigText) ? 0 : FIELD_BIG_TEXT;
+            fields |= isEmpty(intentData) ? 0 : FIELD_INTENT_DATA;
+            fields |= isEmpty(bigPicture) ? 0 : FIELD_BIG_PICTURE;
+            fields |= isEmpty(bigLargeIcon) ? 0 : FIELD_BIG_LARGE_ICON;
+            fields |= isEmpty(bigContentTitle) ? 0 : FIELD_BIG_CONTENT_TITLE;
+            fields |= isEmpty(bigContentDesc) ? 0 : FIELD_BIG_CONTENT_DESCRIPTION;
+            fields |= isEmpty(bigSummary) ? 0 : FIELD_BIG_SUMMARY_TEXT;
+            fields |= isEmpty(channelId) ? 0 : FIELD_CHANNEL_ID;
+            fields |= color == null ? 0 : FIELD_COLOR;
+            fields |= notification.number == 0 ? 0 : FIELD_NUMBER;
+            fields |= isEmpty(group) ? 0 : FIELD_GROUP;
+            fields |= groupAlertBehavior == 0 ? 0 : FIELD_GROUP_ALERT_BEHAVIOR;
+            fields |= isEmpty(sortKey) ? 0 : FIELD_SORT_KEY;
+            fields |= showWhen ? FIELD_WHEN : 0;
+            fields |= extras.getBoolean(Notification.EXTRA_SHOW_CHRONOMETER, false) ? FLAG_USES_CHRONOMETER : 0;
+            fields |= extras.getBoolean(KEY_SHOW_IN_FOREGROUND, true) ? 0 : FLAG_HIDE_IN_FOREGROUND;
+            fields |= extras.getBoolean(KEY_BIG_SHOW_WHEN_COLLAPSED, false) && !isEmpty(bigPicture) ? FLAG_BIG_SHOW_WHEN_COLLAPSED : 0;
+            fields |= 0 != (notification.flags & Notification.FLAG_AUTO_CANCEL) ? FLAG_AUTO_CANCEL : 0;
+            fields |= 0 != (notification.flags & Notification.FLAG_GROUP_SUMMARY) ? FLAG_GROUP_SUMMARY : 0;
+
+            writeVarLong(out, extras.getInt(KEY_ID));
+            writeVarLong(out, fields);
+            writeVarString(out, fields, FIELD_TITLE, title);
+            writeVarString(out, fields, FIELD_TEXT, text);
+            writeDictionaryString(out, fields, FIELD_SMALL_ICON, smallIcon, strings);
+            writeDictionaryString(out, fields, FIELD_LARGE_ICON, largeIcon, strings);
+            if ((fields & FIELD_FIRE_TIME) != 0)
+                writeVarLong(out, fireTime);
+            if ((fields & FIELD_REPEAT_INTERVAL) != 0)
+                writeVarLong(out, repeatInterval);
+            writeVarString(out, fields, FIELD_BIG_TEXT, bigText);
+            writeVarString(out, fields, FIELD_INTENT_DATA, intentData);
+            writeDictionaryString(out, fields, FIELD_BIG_PICTURE, bigPicture, strings);
+            writeDictionaryString(out, fields, FIELD_BIG_LARGE_ICON, bigLargeIcon, strings);
+            writeVarString(out, fields, FIELD_BIG_CONTENT_TITLE, bigContentTitle);
+            writeVarString(out, fields, FIELD_BIG_CONTENT_DESCRIPTION, bigContentDesc);
+            writeVarString(out, fields, FIELD_BIG_SUMMARY_TEXT, bigSummary);
+            writeDictionaryString(out, fields, FIELD_CHANNEL_ID, channelId, strings);
             if (color != null)
-                out.writeInt(color);
-            out.writeInt(notification.number);
-            out.writeBoolean(0 != (notification.flags & Notification.FLAG_AUTO_CANCEL));
-            serializeString(out, notification.getGroup());
-            out.writeBoolean(0 != (notification.flags & Notification.FLAG_GROUP_SUMMARY));
-            out.writeInt(UnityNotificationManager.getNotificationGroupAlertBehavior(notification));
-            serializeString(out, notification.getSortKey());
+                out.writeInt(color);  // usually has alpha set, varint would be longer
+            if ((fields & FIELD_NUMBER) != 0)
+                writeVarLong(out, notification.number);
+            writeDictionaryString(out, fields, FIELD_GROUP, group, strings);
+            if ((fields & FIELD_GROUP_ALERT_BEHAVIOR) != 0)
+                writeVarLong(out, groupAlertBehavior);
+            writeDictionaryString(out, fields, FIELD_SORT_KEY, sortKey, strings);
             if (showWhen)
-                out.writeLong(notification.when);
+                writeVarLong(out, notification.when - fireTime);  // usually the same or close
 
             return true;
         } catch (Exception e) {
@@ -188,6 +273,75 @@ class UnityNotificationUtilities {
         }
     }
 
+    static boolean isEmpty(String s) {
+        return s == null || s.length() == 0;
+    }
+
+    // zigzag encoded, so that small negative numbers are short too
+    static void writeVarLong(DataOutputStream out, long value) throws IOException {
+        long v = (value << 1) ^ (value >> 63);
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int)(v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int)v);
+    }
+
+    private static long readVarLong(DataInputStream in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            v |= (long)(b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return (v >>> 1) ^ -(v & 1);
+        }
+        throw new IOException("Malformed variable length integer");
+    }
+
+    static void writeVarString(DataOutputStream out, int fields, int field, String s) throws IOException {
+        if ((fields & field) == 0)
+            return;
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static void writeDictionaryString(DataOutputStream out, int fields, int field, String s, UnityNotificationStringDictionary strings) throws IOException {
+        if ((fields & field) == 0)
+            return;
+        int index = strings == null ? -1 : strings.indexOf(s);
+        if (index < 0)
+            writeVarString(out, fields, field, s);
+        else
+            writeVarLong(out, -1 - index);
+    }
+
+    private static String readStringField(DataInputStream in, int fields, int field, UnityNotificationStringDictionary strings) throws IOException {
+        if ((fields & field) == 0)
+            return null;
+        long length = readVarLong(in);
+        if (length >= 0)
+            return readString(in, length);
+        String s = strings.get((int)(-1 - length));
+        if (s == null)
+            throw new IOException("Unknown dictionary string " + (-1 - length));
+        return s;
+    }
+
+    private static String readVarString(DataInputStream in, int fields, int field) throws IOException {
+        if ((fields & field) == 0)
+            return null;
+        return readString(in, readVarLong(in));
+    }
+
+    private static String readString(DataInputStream in, long length) throws IOException {
+        if (length <= 0 || length > in.available())
+            throw new IOException("Invalid string length " + length);
+        byte[] bytes = new byte[(int)length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
     static void serializeString(DataOutputStream out, String s) throws IOException {
         if (s == null || s.length() == 0)
             out.writeInt(0);
@@ -231,17 +385,19 @@ class UnityNotificationUtilities {
         return deserializeNotification(context, bytes);
     }
 
+    static Object deserializeNotification(Context context, byte[] bytes) {
+        return deserializeNotification(context, ByteBuffer.wrap(bytes));
+    }
+
     /* See serialization method above for explaination of fallbacks.
        This one matches it with one additional fallback: support for "old" bundle serialization.
+       Data is read from position to limit of the buffer, which itself is not modified.
     */
-    private static Object deserializeNotification(Context context, byte[] bytes) {
-        ByteArrayInputStream data = new ByteArrayInputStream(bytes);
-        DataInputStream in = new DataInputStream(data);
-        Notification notification = deserializeNotificationParcelable(in);
+    static Object deserializeNotification(Context context, ByteBuffer bytes) {
+        Notification notification = deserializeNotificationParcelable(new DataInputStream(new ByteBufferInputStream(bytes)));
         if (notification != null)
             return notification;
-        data.reset();
-        Notification.Builder builder = deserializeNotificationCustom(context, in);
+        Notification.Builder builder = deserializeNotificationCustom(context, new DataInputStream(new ByteBufferInputStream(bytes)));
         if (builder == null) {
             builder = deserializedFromOldIntent(context, bytes);
         }
@@ -300,64 +456,103 @@ class UnityNotificationUtilities {
             Bundle extras = null;
             String bigPicture = null, bigLargeIcon = null, bigContentTitle = null, bigSummary = null, bigContentDesc = null;
             boolean bigShowWhenCollapsed = false;
-            if (version < 2) {
-                // no longer serialized since v2
-                extras = deserializeParcelable(in);
-            }
+            String channelId, group, sortKey;
+            boolean haveColor, shouldAutoCancel, groupSummary;
+            int color = 0, number, groupAlertBehavior;
+            long when;
+            if (version >= 4) {
+                UnityNotificationStringDictionary strings = UnityNotificationManager.getNotificationManagerImpl(context).getStringDictionary();
+                id = (int)readVarLong(in);
+                int fields = (int)readVarLong(in);
+                if ((fields & ~KNOWN_FIELDS_AND_FLAGS) != 0)
+                    throw new IOException("Unknown fields in serialized notification " + Integer.toHexString(fields));
+                title = readVarString(in, fields, FIELD_TITLE);
+                text = readVarString(in, fields, FIELD_TEXT);
+                smallIcon = readStringField(in, fields, FIELD_SMALL_ICON, strings);
+                largeIcon = readStringField(in, fields, FIELD_LARGE_ICON, strings);
+                fireTime = (fields & FIELD_FIRE_TIME) != 0 ? readVarLong(in) : -1;
+                repeatInterval = (fields & FIELD_REPEAT_INTERVAL) != 0 ? readVarLong(in) : -1;
+                bigText = readVarString(in, fields, FIELD_BIG_TEXT);
+                intentData = readVarString(in, fields, FIELD_INTENT_DATA);
+                bigPicture = readStringField(in, fields, FIELD_BIG_PICTURE, strings);
+                bigLargeIcon = readStringField(in, fields, FIELD_BIG_LARGE_ICON, strings);
+                bigContentTitle = readVarString(in, fields, FIELD_BIG_CONTENT_TITLE);
+                bigContentDesc = readVarString(in, fields, FIELD_BIG_CONTENT_DESCRIPTION);
+                bigSummary = readVarString(in, fields, FIELD_BIG_SUMMARY_TEXT);
+                channelId = readStringField(in, fields, FIELD_CHANNEL_ID, strings);
+                haveColor = (fields & FIELD_COLOR) != 0;
+                if (haveColor)
+                    color = in.readInt();
+                number = (fields & FIELD_NUMBER) != 0 ? (int)readVarLong(in) : 0;
+                group = readStringField(in, fields, FIELD_GROUP, strings);
+                groupAlertBehavior = (fields & FIELD_GROUP_ALERT_BEHAVIOR) != 0 ? (int)readVarLong(in) : 0;
+                sortKey = readStringField(in, fields, FIELD_SORT_KEY, strings);
+                when = (fields & FIELD_WHEN) != 0 ? fireTime + readVarLong(in) : 0;
+                usesStopWatch = (fields & FLAG_USES_CHRONOMETER) != 0;
+                showWhen = (fields & FIELD_WHEN) != 0;
+                showInForeground = (fields & FLAG_HIDE_IN_FOREGROUND) == 0;
+                bigShowWhenCollapsed = (fields & FLAG_BIG_SHOW_WHEN_COLLAPSED) != 0;
+                shouldAutoCancel = (fields & FLAG_AUTO_CANCEL) != 0;
+                groupSummary = (fields & FLAG_GROUP_SUMMARY) != 0;
+            } else {
+                if (version < 2) {
+                    // no longer serialized since v2
+                    extras = deserializeParcelable(in);
+                }
 
-            // before v2 it was extras or variables, since 2 always variables
-            if (extras == null) {
-                // extras serialized manually
-                id = in.readInt();
-                title = deserializeString(in);
-                text = deserializeString(in);
-                smallIcon = deserializeString(in);
-                largeIcon = deserializeString(in);
-                fireTime = in.readLong();
-                repeatInterval = in.readLong();
-                bigText = deserializeString(in);
-                usesStopWatch = in.readBoolean();
-                showWhen = in.readBoolean();
-                intentData = deserializeString(in);
-                if (version > 0)
-                    showInForeground = in.readBoolean();
-
-                if (version >= 3) {
-                    bigPicture = deserializeString(in);
-                    if (bigPicture != null && bigPicture.length() > 0) {
-                        // the following only need to be put in if big picture is there
-                        bigLargeIcon = deserializeString(in);
-                        bigContentTitle = deserializeString(in);
-                        bigContentDesc = deserializeString(in);
-                        bigSummary = deserializeString(in);
-                        bigShowWhenCollapsed = in.readBoolean();
+                // before v2 it was extras or variables, since 2 always variables
+                if (extras == null) {
+                    // extras serialized manually
+                    id = in.readInt();
+                    title = deserializeString(in);
+                    text = deserializeString(in);
+                    smallIcon = deserializeString(in);
+                    largeIcon = deserializeString(in);
+                    fireTime = in.readLong();
+                    repeatInterval = in.readLong();
+                    bigText = deserializeString(in);
+                    usesStopWatch = in.readBoolean();
+                    showWhen = in.readBoolean();
+                    intentData = deserializeString(in);
+                    if (version > 0)
+                        showInForeground = in.readBoolean();
+
+                    if (version >= 3) {
+                        bigPicture = deserializeString(in);
+                        if (bigPicture != null && bigPicture.length() > 0) {
+                            // the following only need to be put in if big picture is there
+                            bigLargeIcon = deserializeString(in);
+                            bigContentTitle = deserializeString(in);
+                            bigContentDesc = deserializeString(in);
+                            bigSummary = deserializeString(in);
+                            bigShowWhenCollapsed = in.readBoolean();
+                        }
                     }
+                } else {
+                    title = extras.getString(Notification.EXTRA_TITLE);
+                    text = extras.getString(Notification.EXTRA_TEXT);
+                    smallIcon = extras.getString(KEY_SMALL_ICON);
+                    largeIcon = extras.getString(KEY_LARGE_ICON);
+                    fireTime = extras.getLong(KEY_FIRE_TIME, -1);
+                    repeatInterval = extras.getLong(KEY_REPEAT_INTERVAL, -1);
+                    bigText = extras.getString(Notification.EXTRA_BIG_TEXT);
+                    usesStopWatch = extras.getBoolean(Notification.EXTRA_SHOW_CHRONOMETER, false);
+                    showWhen = extras.getBoolean(Notification.EXTRA_SHOW_WHEN, false);
+                    intentData = extras.getString(KEY_INTENT_DATA);
                 }
-            } else {
-                title = extras.getString(Notification.EXTRA_TITLE);
-                text = extras.getString(Notification.EXTRA_TEXT);
-                smallIcon = extras.getString(KEY_SMALL_ICON);
-                largeIcon = extras.getString(KEY_LARGE_ICON);
-                fireTime = extras.getLong(KEY_FIRE_TIME, -1);
-                repeatInterval = extras.getLong(KEY_REPEAT_INTERVAL, -1);
-                bigText = extras.getString(Notification.EXTRA_BIG_TEXT);
-                usesStopWatch = extras.getBoolean(Notification.EXTRA_SHOW_CHRONOMETER, false);
-                showWhen = extras.getBoolean(Notification.EXTRA_SHOW_WHEN, false);
-                intentData = extras.getString(KEY_INTENT_DATA);
-            }
 
-            String channelId = deserializeString(in);
-            boolean haveColor = in.readBoolean();
-            int color = 0;
-            if (haveColor)
-                color = in.readInt();
-            int number = in.readInt();
-            boolean shouldAutoCancel = in.readBoolean();
-            String group = deserializeString(in);
-            boolean groupSummary = in.readBoolean();
-            int groupAlertBehavior = in.readInt();
-            String sortKey = deserializeString(in);
-            long when = showWhen ? in.readLong() : 0;
+                channelId = deserializeString(in);
+                haveColor = in.readBoolean();
+                if (haveColor)
+                    color = in.readInt();
+                number = in.readInt();
+                shouldAutoCancel = in.readBoolean();
+                group = deserializeString(in);
+                groupSummary = in.readBoolean();
+                groupAlertBehavior = in.readInt();
+                sortKey = deserializeString(in);
+                when = showWhen ? in.readLong() : 0;
+            }
 
             UnityNotificationManager manager = UnityNotificationManager.getNotificationManagerImpl(context);
             Notification.Builder builder = manager.createNotificationBuilder(channelId);
@@ -410,10 +605,20 @@ class UnityNotificationUtilities {
         return null;
     }
 
-    private static Notification.Builder deserializedFromOldIntent(Context context, byte[] bytes) {
+    private static Notification.Builder deserializedFromOldIntent(Context context, ByteBuffer data) {
         try {
+            byte[] bytes;
+            int offset, length = data.remaining();
+            if (data.hasArray()) {
+                bytes = data.array();
+                offset = data.arrayOffset() + data.position();
+            } else {
+                bytes = new byte[length];
+                offset = 0;
+                data.duplicate().get(bytes);
+            }
             Parcel p = Parcel.obtain();
-            p.unmarshall(bytes, 0, bytes.length);
+            p.unmarshall(bytes, offset, length);
             p.setDataPosition(0);
             Bundle bundle = new Bundle();
             bundle.readFromParcel(p);
@@ -649,4 +854,48 @@ class UnityNotificationUtilities {
 
         return builder;
     }
+
+    // gives access to written bytes without the copy toByteArray() makes
+    private static class ByteBufferOutputStream extends ByteArrayOutputStream {
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
+    }
+
+    // reads from a view of the buffer, so the buffer itself (possibly memory mapped file) is left untouched
+    private static class ByteBufferInputStream extends InputStream {
+        private ByteBuffer mBuffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            mBuffer = buffer.duplicate();
+        }
+
+        @Override
+        public int read() {
+            return mBuffer.hasRemaining() ? (mBuffer.get() & 0xFF) : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!mBuffer.hasRemaining())
+                return -1;
+            len = Math.min(len, mBuffer.remaining());
+            mBuffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public long skip(long n) {
+            int skipped = (int)Math.max(0, Math.min(n, mBuffer.remaining()));
+            mBuffer.position(mBuffer.position() + skipped);
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return mBuffer.remaining();
+        }
+    }
 }
@@ -3,6 +3,7 @@ using UnityEngine;
 using UnityEngine.TestTools;
 using NUnit.Framework;
 using System.Collections;
+using System.Collections.Generic;
 using Unity.Notifications.Android;
 
 class AndroidNotificationSendingTests
@@ -75,6 +76,30 @@ class AndroidNotificationSendingTests
             Debug.LogWarning("Timeout waiting for notification");
     }
 
+    IEnumerator WaitForCondition(Func<bool> condition, float timeout)
+    {
+        float passed = 0.0f;
+        while (!condition() && passed < timeout)
+        {
+            yield return null;
+            passed += Time.deltaTime;
+        }
+        if (passed > timeout)
+            Debug.LogWarning("Timeout waiting for condition");
+    }
+
+    IEnumerator WaitForStatus(int[] ids, Func<int, NotificationStatus> expected, float timeout)
+    {
+        // scheduling and cancelling happen on a background thread, so status only settles eventually
+        return WaitForCondition(() =>
+        {
+            for (int i = 0; i < ids.Length; ++i)
+                if (AndroidNotificationCenter.CheckScheduledNotificationStatus(ids[i]) != expected(i))
+                    return false;
+            return true;
+        }, timeout);
+    }
+
     [UnityTest]
     [UnityPlatform(RuntimePlatform.Android)]
     public IEnumerator SendNotificationExplicitID_NotificationIsReceived()
@@ -120,6 +145,152 @@ class AndroidNotificationSendingTests
         Assert.AreEqual(originalId, currentHandler.lastNotification.Id);
     }
 
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void SendNotifications_NullArrayThrows()
+    {
+        Assert.Throws<ArgumentNullException>(() => AndroidNotificationCenter.SendNotifications(null, kDefaultTestChannel));
+        Assert.Throws<ArgumentNullException>(() => AndroidNotificationCenter.SendNotifications(null));
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator SendNotifications_AllScheduledWithDistinctIds()
+    {
+        var notifications = new AndroidNotification[60];
+        for (int i = 0; i < notifications.Length; ++i)
+            notifications[i] = new AndroidNotification($"SendNotifications {i}", "SendNotifications Text", System.DateTime.Now.AddHours(1 + i));
+
+        var ids = AndroidNotificationCenter.SendNotifications(notifications, kDefaultTestChannel);
+        yield return null;
+
+        Assert.AreEqual(notifications.Length, ids.Length);
+        Assert.AreEqual(notifications.Length, new HashSet<int>(ids).Count);
+        foreach (var id in ids)
+            Assert.AreEqual(NotificationStatus.Scheduled, AndroidNotificationCenter.CheckScheduledNotificationStatus(id));
+
+        foreach (var id in ids)
+            AndroidNotificationCenter.CancelScheduledNotification(id);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void CancelScheduledNotifications_NullArrayThrows()
+    {
+        Assert.Throws<ArgumentNullException>(() => AndroidNotificationCenter.CancelScheduledNotifications(null));
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator CancelScheduledNotificationsInGroup_OnlyGroupIsCancelled()
+    {
+        var notifications = new AndroidNotification[6];
+        for (int i = 0; i < notifications.Length; ++i)
+        {
+            notifications[i] = new AndroidNotification($"CancelInGroup {i}", "CancelInGroup Text", System.DateTime.Now.AddHours(1 + i));
+            notifications[i].Group = i % 2 == 0 ? "campaign" : "other";
+        }
+
+        var ids = AndroidNotificationCenter.SendNotifications(notifications, kDefaultTestChannel);
+        AndroidNotificationCenter.CancelScheduledNotificationsInGroup("campaign");
+        yield return WaitForStatus(ids, i => i % 2 == 0 ? NotificationStatus.Unknown : NotificationStatus.Scheduled, 10.0f);
+
+        for (int i = 0; i < ids.Length; ++i)
+        {
+            var expected = i % 2 == 0 ? NotificationStatus.Unknown : NotificationStatus.Scheduled;
+            Assert.AreEqual(expected, AndroidNotificationCenter.CheckScheduledNotificationStatus(ids[i]));
+        }
+
+        AndroidNotificationCenter.CancelScheduledNotifications(ids);
+        yield return WaitForStatus(ids, i => NotificationStatus.Unknown, 10.0f);
+        foreach (var id in ids)
+            Assert.AreEqual(NotificationStatus.Unknown, AndroidNotificationCenter.CheckScheduledNotificationStatus(id));
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator ScheduleAndCancel_WaitTimesRecordedPerLane()
+    {
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        var before = manager.Call<long[]>("getQueueWaitTimes");
+        Assert.AreEqual(9, before.Length);  // started, total and longest wait for immediate, normal and bulk lanes
+
+        var n = new AndroidNotification("WaitTimes", "WaitTimes Text", System.DateTime.Now.AddHours(1));
+        var id = AndroidNotificationCenter.SendNotification(n, kDefaultTestChannel);
+        yield return WaitForCondition(() => manager.Call<long[]>("getQueueWaitTimes")[3] > before[3], 10.0f);
+        var ids = AndroidNotificationCenter.SendNotifications(new[] { n, n }, kDefaultTestChannel);
+        yield return WaitForCondition(() => manager.Call<long[]>("getQueueWaitTimes")[6] > before[6], 10.0f);
+        AndroidNotificationCenter.CancelScheduledNotification(id);
+        yield return WaitForCondition(() => manager.Call<long[]>("getQueueWaitTimes")[0] > before[0], 10.0f);
+
+        var after = manager.Call<long[]>("getQueueWaitTimes");
+        Assert.GreaterOrEqual(after[0] - before[0], 1);
+        Assert.GreaterOrEqual(after[3] - before[3], 1);
+        Assert.GreaterOrEqual(after[6] - before[6], 1);  // whole batch is a single task
+        for (int lane = 0; lane < 3; ++lane)
+            Assert.LessOrEqual(after[lane * 3 + 2], after[lane * 3 + 1]);
+
+        AndroidNotificationCenter.CancelScheduledNotifications(ids);
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator Housekeeping_ProbesOnlyNotificationsWithUnknownState()
+    {
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+
+        var n = new AndroidNotification("Housekeeping", "Housekeeping Text", System.DateTime.Now.AddHours(1));
+        long commits = manager.Call<long>("getCommitCount");
+        var ids = AndroidNotificationCenter.SendNotifications(new[] { n, n, n }, kDefaultTestChannel);
+        // storage is committed after the tasks are done, so by then the notifications are known to be armed
+        yield return WaitForCondition(() => manager.Call<long>("getCommitCount") > commits && AndroidNotificationCenter.QueueStatus.PendingRequests == 0, 10.0f);
+
+        const int unknownId = 7999;  // never scheduled, so nothing is known about it
+        var before = manager.Call<long[]>("getHousekeepingCounts");
+        manager.Call("performNotificationHousekeeping", new[] { ids[0], ids[1], ids[2], unknownId });
+        var after = manager.Call<long[]>("getHousekeepingCounts");
+
+        Assert.AreEqual(1, after[0] - before[0]);
+        Assert.AreEqual(3, after[1] - before[1]);
+        foreach (var id in ids)
+            Assert.AreEqual(NotificationStatus.Scheduled, AndroidNotificationCenter.CheckScheduledNotificationStatus(id));
+
+        AndroidNotificationCenter.CancelScheduledNotifications(ids);
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator ScheduleAndCancelManyIds_LastRequestForEachIdWins()
+    {
+        var n = new AndroidNotification("ScheduleAndCancel", "ScheduleAndCancel Text", System.DateTime.Now.AddHours(1));
+        const int firstId = 7000;
+        const int count = 20;
+
+        // tasks for different IDs run on different workers, tasks for the same ID must keep their order
+        for (int round = 0; round < 3; ++round)
+        {
+            for (int id = firstId; id < firstId + count; ++id)
+            {
+                AndroidNotificationCenter.SendNotificationWithExplicitID(n, kDefaultTestChannel, id);
+                if (id % 2 == 0)
+                    AndroidNotificationCenter.CancelScheduledNotification(id);
+            }
+        }
+        var allIds = new int[count];
+        for (int i = 0; i < count; ++i)
+            allIds[i] = firstId + i;
+        yield return WaitForStatus(allIds, i => allIds[i] % 2 == 0 ? NotificationStatus.Unknown : NotificationStatus.Scheduled, 10.0f);
+
+        for (int id = firstId; id < firstId + count; ++id)
+        {
+            var expected = id % 2 == 0 ? NotificationStatus.Unknown : NotificationStatus.Scheduled;
+            Assert.AreEqual(expected, AndroidNotificationCenter.CheckScheduledNotificationStatus(id));
+            AndroidNotificationCenter.CancelScheduledNotification(id);
+        }
+    }
+
     [UnityTest]
     [UnityPlatform(RuntimePlatform.Android)]
     public IEnumerator SendNotificationAndCancelNotification_NotificationIsNotReceived()
@@ -367,7 +538,7 @@ class AndroidNotificationSendingTests
 
         yield return new WaitForSeconds(0.2f);
         // simulate reboot by calling reschedule method, that is called after reboot
-        rebootClass.CallStatic("rescheduleSavedNotifications", context);
+        rebootClass.CallStatic<bool>("rescheduleSavedNotifications", context, long.MaxValue);
 
         var newManager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
         // new manager was supposed to be created, assign callback from original one to get notifications
@@ -382,6 +553,112 @@ class AndroidNotificationSendingTests
         Assert.AreEqual(1, currentHandler.receivedNotificationCount);
     }
 
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator RescheduleAfterReboot_OutOfTime_ContinuesWhereStopped()
+    {
+        var ids = new[] { 1101, 1102, 1103 };
+        foreach (var id in ids)
+        {
+            var n = new AndroidNotification("RescheduleInParts", "Should not arrive", System.DateTime.Now.AddDays(1));
+            AndroidNotificationCenter.SendNotificationWithExplicitID(n, kDefaultTestChannel, id);
+        }
+
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var rebootClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationRestartReceiver");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var context = manager.Call<AndroidJavaObject>("getContext");
+        yield return WaitForCondition(() => Array.TrueForAll(ids, id => manager.Call<bool>("checkIfPendingNotificationIsRegistered", id)), 10.0f);
+        // simulate reboot by cancelling alarms while keeping saved notifications
+        foreach (var id in ids)
+            manager.Call("cancelPendingNotificationIntent", id);
+
+        // deadline in the past, only the one due first gets rescheduled
+        Assert.IsFalse(rebootClass.CallStatic<bool>("rescheduleSavedNotifications", context, 0L));
+        Assert.IsFalse(manager.Call<bool>("checkIfPendingNotificationIsRegistered", ids[2]));
+
+        Assert.IsTrue(rebootClass.CallStatic<bool>("rescheduleSavedNotifications", context, long.MaxValue));
+        foreach (var id in ids)
+            Assert.IsTrue(manager.Call<bool>("checkIfPendingNotificationIsRegistered", id));
+
+        foreach (var id in ids)
+            AndroidNotificationCenter.CancelScheduledNotification(id);
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator RescheduleAfterReboot_NearestFireTimeGoesFirst()
+    {
+        // higher ID fires sooner
+        var ids = new[] { 1111, 1112, 1113 };
+        for (int i = 0; i < ids.Length; ++i)
+        {
+            var n = new AndroidNotification("RescheduleNearestFirst", "Should not arrive", System.DateTime.Now.AddDays(ids.Length - i));
+            AndroidNotificationCenter.SendNotificationWithExplicitID(n, kDefaultTestChannel, ids[i]);
+        }
+
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var rebootClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationRestartReceiver");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var context = manager.Call<AndroidJavaObject>("getContext");
+        yield return WaitForCondition(() => Array.TrueForAll(ids, id => manager.Call<bool>("checkIfPendingNotificationIsRegistered", id)), 10.0f);
+        foreach (var id in ids)
+            manager.Call("cancelPendingNotificationIntent", id);
+
+        Assert.IsFalse(rebootClass.CallStatic<bool>("rescheduleSavedNotifications", context, 0L));
+        Assert.IsTrue(manager.Call<bool>("checkIfPendingNotificationIsRegistered", ids[2]));
+        Assert.IsFalse(manager.Call<bool>("checkIfPendingNotificationIsRegistered", ids[0]));
+
+        Assert.IsTrue(rebootClass.CallStatic<bool>("rescheduleSavedNotifications", context, long.MaxValue));
+        foreach (var id in ids)
+            Assert.IsTrue(manager.Call<bool>("checkIfPendingNotificationIsRegistered", id));
+
+        foreach (var id in ids)
+            AndroidNotificationCenter.CancelScheduledNotification(id);
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator SwitchFromMasterAlarmEngine_WithoutRestartReceiver_NotificationIsReceived()
+    {
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var context = manager.Call<AndroidJavaObject>("getContext");
+        using var packageManager = context.Call<AndroidJavaObject>("getPackageManager");
+        using var receiver = new AndroidJavaObject("android.content.ComponentName", context, "com.unity.androidnotifications.UnityNotificationRestartReceiver");
+        using var prefs = context.Call<AndroidJavaObject>("getSharedPreferences", "UNITY_NOTIFICATIONS_ALARM_ENGINE", 0);
+        // same as with RescheduleOnRestart off, nothing gets to restart receiver
+        const int COMPONENT_ENABLED_STATE_DEFAULT = 0, COMPONENT_ENABLED_STATE_DISABLED = 2, DONT_KILL_APP = 1;
+        packageManager.Call("setComponentEnabledSetting", receiver, COMPONENT_ENABLED_STATE_DISABLED, DONT_KILL_APP);
+        try
+        {
+            const int id = 1121;
+            var n = new AndroidNotification("SwitchAlarmEngine", "SwitchAlarmEngine Text", System.DateTime.Now.AddSeconds(10));
+            AndroidNotificationCenter.SendNotificationWithExplicitID(n, kDefaultTestChannel, id);
+            yield return WaitForCondition(() => manager.Call<bool>("checkIfPendingNotificationIsRegistered", id), 10.0f);
+
+            // pretend it was scheduled by master engine in previous process, so it has no alarm of its own
+            manager.Call("cancelPendingNotificationIntent", id);
+            using (var editor = prefs.Call<AndroidJavaObject>("edit"))
+            using (var edited = editor.Call<AndroidJavaObject>("putString", "engine", "master"))
+                edited.Call<bool>("commit");
+            managerClass.SetStatic<AndroidJavaObject>("sAlarmEngine", null);
+            manager.Call<AndroidJavaObject>("getAlarmEngine").Dispose();
+
+            // new engine is recorded once alarms are moved over to it
+            yield return WaitForCondition(() => prefs.Call<string>("getString", "engine", "") == "direct", 10.0f);
+            Assert.AreEqual("direct", prefs.Call<string>("getString", "engine", ""));
+            Assert.IsTrue(manager.Call<bool>("checkIfPendingNotificationIsRegistered", id));
+
+            yield return WaitForNotification(120.0f);
+            Assert.AreEqual(1, currentHandler.receivedNotificationCount);
+        }
+        finally
+        {
+            packageManager.Call("setComponentEnabledSetting", receiver, COMPONENT_ENABLED_STATE_DEFAULT, DONT_KILL_APP);
+        }
+    }
+
     bool RescheduleNotification(AndroidNotification notification)
     {
         AndroidJavaObject manager, currentTime;
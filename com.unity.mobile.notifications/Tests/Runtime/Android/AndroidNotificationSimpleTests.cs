@@ -350,6 +350,11 @@ class AndroidNotificationSimpleTests
         return SerializeNotificationCustom_old("serializeNotificationCustom_v2", byteStream, javaNotif);
     }
 
+    static bool SerializeNotificationCustom_v3(AndroidJavaClass utilsClass, AndroidJavaObject byteStream, AndroidJavaObject javaNotif)
+    {
+        return SerializeNotificationCustom_old("serializeNotificationCustom_v3", byteStream, javaNotif);
+    }
+
     static bool SerializeNotificationCustom_old(string method, AndroidJavaObject byteStream, AndroidJavaObject javaNotif)
     {
         using (var dataStream = new AndroidJavaObject("java.io.DataOutputStream", byteStream))
@@ -776,4 +781,44 @@ class AndroidNotificationSimpleTests
         Assert.IsNotNull(deserialized);
         CheckNotificationsMatch(original, deserialized.Notification);
     }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void CanDeserializeCustomSerializedNotification_v3()
+    {
+        const int notificationId = 255;
+
+        var original = CreateNotificationWithAllParameters();
+
+        AndroidNotificationIntentData deserialized;
+        using (var builder = AndroidNotificationCenter.CreateNotificationBuilder(notificationId, original, kChannelId))
+        {
+            // Serialize like we did in version 3
+            deserialized = SerializeDeserializeNotificationWithFunc(builder, (u, s, j) => SerializeNotificationCustom_v3(u, s, j));
+        }
+
+        Assert.IsNotNull(deserialized);
+        CheckNotificationsMatch(original, deserialized.Notification);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void CanDeserializeCustomSerializedNotification_WithoutTimestamp()
+    {
+        const int notificationId = 256;
+
+        var original = new AndroidNotification("title", "text", DateTime.Now);
+        original.UsesStopwatch = true;
+        original.ShowTimestamp = false;
+
+        AndroidNotificationIntentData deserialized;
+        using (var builder = AndroidNotificationCenter.CreateNotificationBuilder(notificationId, original, kChannelId))
+        {
+            // timestamp field alone tells whether to show it
+            deserialized = SerializeDeserializeNotification(builder);
+        }
+
+        Assert.IsNotNull(deserialized);
+        CheckNotificationsMatch(original, deserialized.Notification);
+    }
 }
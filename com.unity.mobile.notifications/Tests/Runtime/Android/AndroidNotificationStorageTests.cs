@@ -0,0 +1,981 @@
+using System;
+using System.Collections;
+using NUnit.Framework;
+using UnityEngine;
+using UnityEngine.TestTools;
+using Unity.Notifications.Android;
+#if UNITY_EDITOR
+using UnityEditor;
+#endif
+
+class AndroidNotificationStorageTests
+    : IPrebuildSetup, IPostBuildCleanup
+{
+    const string kChannelId = "NotificationStorageChannel";
+
+#if UNITY_EDITOR
+    PluginImporter GetTestUtils()
+    {
+        var assets = AssetDatabase.FindAssets("UnityNotificationTestUtils");
+        if (assets.Length != 1)
+            throw new Exception("UnityNotificationTestUtils.java not found");
+        return (PluginImporter)AssetImporter.GetAtPath(AssetDatabase.GUIDToAssetPath(assets[0]));
+    }
+#endif
+
+    public void Setup()
+    {
+#if UNITY_EDITOR
+        var testUtils = GetTestUtils();
+        testUtils.SetCompatibleWithPlatform(BuildTarget.Android, true);
+        testUtils.SaveAndReimport();
+#endif
+    }
+
+    public void Cleanup()
+    {
+#if UNITY_EDITOR
+        var testUtils = GetTestUtils();
+        testUtils.SetCompatibleWithPlatform(BuildTarget.Android, false);
+        testUtils.SaveAndReimport();
+#endif
+    }
+
+    [OneTimeSetUp]
+    public void BeforeAllTests()
+    {
+#if !UNITY_EDITOR
+        var c = new AndroidNotificationChannel(kChannelId, "Notification storage", "Notification storage tests", Importance.Default);
+        AndroidNotificationCenter.RegisterNotificationChannel(c);
+#endif
+    }
+
+    static AndroidJavaObject GetContext()
+    {
+        using (var unityPlayer = new AndroidJavaClass("com.unity3d.player.UnityPlayer"))
+        using (var activity = unityPlayer.GetStatic<AndroidJavaObject>("currentActivity"))
+            return activity.Call<AndroidJavaObject>("getApplicationContext");
+    }
+
+    static AndroidJavaObject CreateTempFile(AndroidJavaObject context, string name)
+    {
+        using (var cacheDir = context.Call<AndroidJavaObject>("getCacheDir"))
+        {
+            var file = new AndroidJavaObject("java.io.File", cacheDir, name);
+            file.Call<bool>("delete");
+            return file;
+        }
+    }
+
+    static AndroidJavaObject CreateJournalStore(AndroidJavaObject file, AndroidJavaObject legacyStore = null, AndroidJavaObject registry = null)
+    {
+        return new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationJournalStore", file, legacyStore, registry);
+    }
+
+    static void Put(AndroidJavaObject store, int id, sbyte[] data)
+    {
+        using (var testUtils = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationTestUtils"))
+        using (var buffer = testUtils.CallStatic<AndroidJavaObject>("wrapBytes", data))
+            store.Call("put", id, buffer);
+    }
+
+    static sbyte[] Get(AndroidJavaObject store, int id)
+    {
+        using (var testUtils = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationTestUtils"))
+        using (var buffer = store.Call<AndroidJavaObject>("get", id))
+            return buffer == null ? null : testUtils.CallStatic<sbyte[]>("toByteArray", buffer);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void JournalStore_SavedNotificationsSurviveReopen()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.journal");
+
+        using (var store = CreateJournalStore(file))
+        {
+            Put(store, 1, new sbyte[] { 1, 2, 3 });
+            Put(store, 2, new sbyte[] { 4, 5 });
+            Put(store, 1, new sbyte[] { 6 });
+            Put(store, 3, new sbyte[] { 7, 8, 9 });
+            store.Call("delete", 3);
+            store.Call("close");
+        }
+
+        using (var store = CreateJournalStore(file))
+        {
+            CollectionAssert.AreEqual(new sbyte[] { 6 }, Get(store, 1));
+            CollectionAssert.AreEqual(new sbyte[] { 4, 5 }, Get(store, 2));
+            Assert.IsNull(Get(store, 3));
+            store.Call("close");
+        }
+
+        file.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void JournalStore_CompactsOverwrittenRecords()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.journal");
+        var data = new sbyte[1000];
+
+        using (var store = CreateJournalStore(file))
+        {
+            for (int i = 0; i < 500; ++i)
+                Put(store, i % 10, data);
+            store.Call("close");
+        }
+
+        // 10 notifications 1KB each, without compaction file would be 500KB
+        Assert.Less(file.Call<long>("length"), 100 * 1024);
+        using (var store = CreateJournalStore(file))
+        {
+            for (int i = 0; i < 10; ++i)
+                Assert.AreEqual(data.Length, Get(store, i).Length);
+            store.Call("close");
+        }
+
+        file.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void JournalStore_FindsNotificationsThroughIndex()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.journal");
+        using var indexFile = new AndroidJavaObject("java.io.File", file.Call<string>("getPath") + ".index");
+
+        using (var store = CreateJournalStore(file))
+        {
+            // enough to get index written on commit, plus a record after it
+            for (int i = 0; i < 100; ++i)
+                Put(store, i, new sbyte[] { (sbyte)i });
+            store.Call("commit");
+            Assert.IsTrue(indexFile.Call<bool>("exists"));
+            store.Call("delete", 99);
+            store.Call("close");
+        }
+
+        Assert.IsTrue(indexFile.Call<bool>("exists"));
+        using (var store = CreateJournalStore(file))
+        {
+            CollectionAssert.AreEqual(new sbyte[] { 10 }, Get(store, 10));
+            CollectionAssert.AreEqual(new sbyte[] { 98 }, Get(store, 98));
+            Assert.IsNull(Get(store, 99));
+            Assert.IsNull(Get(store, 1000));
+            store.Call("close");
+        }
+
+        file.Call<bool>("delete");
+        indexFile.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void JournalStore_FreshStoreSeesChangesAfterIndex()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.journal");
+        using var indexFile = new AndroidJavaObject("java.io.File", file.Call<string>("getPath") + ".index");
+
+        using (var store = CreateJournalStore(file))
+        {
+            for (int i = 0; i < 100; ++i)
+                Put(store, i, new sbyte[] { (sbyte)i });
+            store.Call("close");
+        }
+
+        // changes to notifications already in index, as when they are rescheduled or cancelled later
+        using (var store = CreateJournalStore(file))
+        {
+            Put(store, 10, new sbyte[] { 110 });
+            store.Call("delete", 20);
+            Put(store, 200, new sbyte[] { 2 });
+            store.Call("close");
+        }
+
+        using (var store = CreateJournalStore(file))
+        {
+            CollectionAssert.AreEqual(new sbyte[] { 110 }, Get(store, 10));
+            Assert.IsNull(Get(store, 20));
+            CollectionAssert.AreEqual(new sbyte[] { 2 }, Get(store, 200));
+            CollectionAssert.AreEqual(new sbyte[] { 50 }, Get(store, 50));
+            Assert.AreEqual(100, store.Call<int[]>("getIds").Length);
+            store.Call("close");
+        }
+
+        file.Call<bool>("delete");
+        indexFile.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void JournalStore_KeepsSerializedNotificationAsRawBytes()
+    {
+        var n = new AndroidNotification("Raw title", "Raw text", DateTime.Now.AddDays(1));
+        n.IntentData = "raw data";
+
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.journal");
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(5, n, kChannelId);
+        using var notification = builder.Call<AndroidJavaObject>("build");
+        using var utils = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationUtilities");
+        using var serialized = utils.CallStatic<AndroidJavaObject>("serializeNotification", notification, false);
+        int size = serialized.Call<int>("remaining");
+
+        using (var store = CreateJournalStore(file))
+        {
+            store.Call("put", 5, serialized);
+            store.Call("close");
+        }
+
+        // payload and a fixed 13 byte record overhead after 8 byte header, no Base64 expansion
+        Assert.AreEqual(8 + 13 + size, file.Call<long>("length"));
+        using (var store = CreateJournalStore(file))
+        using (var loaded = store.Call<AndroidJavaObject>("get", 5))
+        {
+            Assert.AreEqual(size, loaded.Call<int>("remaining"));
+            using var deserialized = utils.CallStatic<AndroidJavaObject>("deserializeNotification", context, loaded);
+            Assert.IsNotNull(deserialized);
+            using var extras = deserialized.Call<AndroidJavaObject>("getExtras");
+            Assert.AreEqual("raw data", extras.Call<string>("getString", "data"));
+            store.Call("close");
+        }
+
+        file.Call<bool>("delete");
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator JournalStore_MigratesNotificationsFromSharedPreferences()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.journal");
+        using var registryFile = CreateTempFile(context, "migration.ids");  // never committed, so no log file either
+        using var legacyStore = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationPrefsStore", context, "u_test_notification_data_");
+
+        Put(legacyStore, 11, new sbyte[] { 1, 1 });
+        Put(legacyStore, 12, new sbyte[] { 2, 2 });
+        Put(legacyStore, 13, new sbyte[] { 3, 3 });  // left behind by old version, not scheduled
+        // preferences are written asynchronously
+        float timeout = 5.0f;
+        while (legacyStore.Call<int[]>("findSavedIds").Length < 3 && timeout > 0)
+        {
+            yield return null;
+            timeout -= Time.deltaTime;
+        }
+
+        using (var registry = CreateRegistry(registryFile))
+        using (var store = CreateJournalStore(file, legacyStore, registry))
+        {
+            Register(registry, 11);
+            Register(registry, 12);
+            CollectionAssert.AreEqual(new sbyte[] { 1, 1 }, Get(store, 11));
+            CollectionAssert.AreEqual(new sbyte[] { 2, 2 }, Get(store, 12));
+            Assert.IsNull(Get(store, 13));
+            var ids = store.Call<int[]>("getIds");
+            Array.Sort(ids);
+            CollectionAssert.AreEqual(new[] { 11, 12 }, ids);
+            store.Call("close");
+        }
+
+        Assert.AreEqual(0, legacyStore.Call<int[]>("findSavedIds").Length);
+        file.Call<bool>("delete");
+        registryFile.Call<bool>("delete");
+    }
+
+    static AndroidJavaObject CreateRegistry(AndroidJavaObject file, AndroidJavaObject legacyPrefs = null)
+    {
+        return new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationRegistry", file, legacyPrefs);
+    }
+
+    static int[] GetSortedIds(AndroidJavaObject registry)
+    {
+        var ids = registry.Call<int[]>("getIds");
+        Array.Sort(ids);
+        return ids;
+    }
+
+    static bool Register(AndroidJavaObject registry, int id, long fireTime = 1000, long repeatInterval = 0)
+    {
+        using (var entry = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationRegistry$Entry", id, fireTime, repeatInterval, "ch"))
+            return registry.Call<bool>("put", entry);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void Registry_RecordedChangesSurviveReopen()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.ids");
+        using var logFile = new AndroidJavaObject("java.io.File", file.Call<string>("getPath") + ".log");
+        logFile.Call<bool>("delete");
+
+        using (var registry = CreateRegistry(file))
+        {
+            Assert.IsTrue(Register(registry, 1));
+            Assert.IsTrue(Register(registry, 2));
+            Assert.IsFalse(Register(registry, 2));
+            registry.Call("commit");
+            Assert.IsTrue(Register(registry, 3));
+            Assert.IsFalse(Register(registry, 3, 2000, 60000));
+            Assert.IsTrue(registry.Call<bool>("remove", 2));
+            Assert.IsFalse(registry.Call<bool>("remove", 4));
+            registry.Call("commit");
+        }
+
+        // few changes are only appended to log: 4 puts 31 bytes each (unchanged put not recorded), remove 5 bytes
+        Assert.IsFalse(file.Call<bool>("exists"));
+        Assert.AreEqual(4 * 31 + 5, logFile.Call<long>("length"));
+        using (var registry = CreateRegistry(file))
+        {
+            CollectionAssert.AreEqual(new[] { 1, 3 }, GetSortedIds(registry));
+            using (var entry = registry.Call<AndroidJavaObject>("get", 3))
+            {
+                Assert.AreEqual(2000, entry.Get<long>("fireTime"));
+                Assert.AreEqual(60000, entry.Get<long>("repeatInterval"));
+                Assert.AreEqual("ch", entry.Get<string>("channelId"));
+            }
+            registry.Call("clear");
+            Register(registry, 7);
+            registry.Call("commit");
+        }
+
+        using (var registry = CreateRegistry(file))
+            CollectionAssert.AreEqual(new[] { 7 }, GetSortedIds(registry));
+
+        logFile.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void Registry_FailedCommitIsRetriedBeforeLaterChanges()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test_retry.ids");
+        using var logFile = new AndroidJavaObject("java.io.File", file.Call<string>("getPath") + ".log");
+        logFile.Call<bool>("delete");
+        // log can't be opened while a directory is in its place
+        Assert.IsTrue(logFile.Call<bool>("mkdir"));
+
+        using (var registry = CreateRegistry(file))
+        {
+            Register(registry, 1);
+            Register(registry, 2);
+            registry.Call("commit");
+            registry.Call<bool>("remove", 1);
+            Register(registry, 3);
+            Assert.IsTrue(logFile.Call<bool>("delete"));
+            registry.Call("commit");
+        }
+
+        using (var registry = CreateRegistry(file))
+            CollectionAssert.AreEqual(new[] { 2, 3 }, GetSortedIds(registry));
+
+        logFile.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void LockStripes_SameIdSharesLock()
+    {
+        using var locks = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationLockStripes", 8);
+        using var first = locks.Call<AndroidJavaObject>("forId", 12345);
+        using var second = locks.Call<AndroidJavaObject>("forId", 12345);
+        Assert.IsTrue(AndroidJNI.IsSameObject(first.GetRawObject(), second.GetRawObject()));
+
+        // consecutive IDs spread over the stripes
+        var seen = new System.Collections.Generic.List<AndroidJavaObject>();
+        for (int id = 1; id <= 64; ++id)
+        {
+            var stripe = locks.Call<AndroidJavaObject>("forId", id);
+            if (seen.Exists(s => AndroidJNI.IsSameObject(s.GetRawObject(), stripe.GetRawObject())))
+                stripe.Dispose();
+            else
+                seen.Add(stripe);
+        }
+        Assert.Greater(seen.Count, 4);
+        foreach (var stripe in seen)
+            stripe.Dispose();
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void Registry_FoldsLogIntoSnapshot()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.ids");
+        using var logFile = new AndroidJavaObject("java.io.File", file.Call<string>("getPath") + ".log");
+        logFile.Call<bool>("delete");
+
+        using (var registry = CreateRegistry(file))
+        {
+            for (int i = 0; i < 1000; ++i)
+            {
+                Register(registry, i);
+                if (i % 2 == 1)
+                    registry.Call<bool>("remove", i);
+                registry.Call("commit");
+            }
+        }
+
+        // 1500 changes were made, log is folded before it outgrows the set itself
+        Assert.IsTrue(file.Call<bool>("exists"));
+        Assert.LessOrEqual(logFile.Call<long>("length"), (500 + 2) * 31);
+        using (var registry = CreateRegistry(file))
+        {
+            Assert.AreEqual(500, registry.Call<int>("size"));
+            Assert.IsTrue(registry.Call<bool>("contains", 998));
+            Assert.IsFalse(registry.Call<bool>("contains", 999));
+        }
+
+        file.Call<bool>("delete");
+        logFile.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void Registry_FindsIdsByChannelAndGroup()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.ids");
+        using var logFile = new AndroidJavaObject("java.io.File", file.Call<string>("getPath") + ".log");
+        logFile.Call<bool>("delete");
+
+        using (var registry = CreateRegistry(file))
+        {
+            foreach (var (id, channel, group) in new[] { (1, "ch1", "g1"), (2, "ch1", "g2"), (3, "ch2", "g1"), (4, "ch2", "g2") })
+                using (var entry = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationRegistry$Entry", id, 1000L, 0L, channel, group))
+                    registry.Call<bool>("put", entry);
+            // moving notification to other channel and group updates the indices
+            using (var entry = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationRegistry$Entry", 4, 1000L, 0L, "ch1", "g1"))
+                registry.Call<bool>("put", entry);
+            registry.Call<bool>("remove", 1);
+            registry.Call("commit");
+        }
+
+        using (var registry = CreateRegistry(file))
+        {
+            var ids = registry.Call<int[]>("getIdsInChannel", "ch1");
+            Array.Sort(ids);
+            CollectionAssert.AreEqual(new[] { 2, 4 }, ids);
+            ids = registry.Call<int[]>("getIdsInGroup", "g1");
+            Array.Sort(ids);
+            CollectionAssert.AreEqual(new[] { 3, 4 }, ids);
+            Assert.AreEqual(0, registry.Call<int[]>("getIdsInGroup", "none").Length);
+            Assert.AreEqual(0, registry.Call<int[]>("getIdsWithUnknownGroup").Length);
+        }
+
+        file.Call<bool>("delete");
+        logFile.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void Registry_MigratesIdsFromSharedPreferences()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.ids");
+        using var prefs = context.Call<AndroidJavaObject>("getSharedPreferences", "u_test_notification_ids", 0);
+        using (var ids = new AndroidJavaObject("java.util.HashSet"))
+        using (var editor = prefs.Call<AndroidJavaObject>("edit"))
+        {
+            ids.Call<bool>("add", "15");
+            ids.Call<bool>("add", "16");
+            editor.Call<AndroidJavaObject>("putStringSet", "UNITY_NOTIFICATION_IDS", ids).Dispose();
+            editor.Call<bool>("commit");
+        }
+
+        using (var registry = CreateRegistry(file, prefs))
+            CollectionAssert.AreEqual(new[] { 15, 16 }, GetSortedIds(registry));
+
+        Assert.IsTrue(file.Call<bool>("exists"));
+        using (var registry = CreateRegistry(file))
+        using (var entry = registry.Call<AndroidJavaObject>("get", 15))
+        {
+            CollectionAssert.AreEqual(new[] { 15, 16 }, GetSortedIds(registry));
+            // schedule is filled in once the saved notification is read
+            Assert.IsFalse(entry.Call<bool>("hasSchedule"));
+            Assert.IsFalse(entry.Call<bool>("hasGroup"));
+        }
+        using (var all = prefs.Call<AndroidJavaObject>("getAll"))
+            Assert.AreEqual(0, all.Call<int>("size"));
+
+        file.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void StringDictionary_IndicesSurviveReopen()
+    {
+        using var context = GetContext();
+        using var file = CreateTempFile(context, "test.strings");
+
+        using (var strings = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationStringDictionary", file))
+        {
+            Assert.AreEqual(0, strings.Call<int>("indexOf", "icon_0"));
+            Assert.AreEqual(1, strings.Call<int>("indexOf", "channel"));
+            Assert.AreEqual(0, strings.Call<int>("indexOf", "icon_0"));
+            // too long to be worth sharing
+            Assert.AreEqual(-1, strings.Call<int>("indexOf", new string('x', 1000)));
+        }
+
+        using (var strings = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationStringDictionary", file))
+        {
+            Assert.AreEqual(2, strings.Call<int>("size"));
+            Assert.AreEqual("icon_0", strings.Call<string>("get", 0));
+            Assert.AreEqual("channel", strings.Call<string>("get", 1));
+            Assert.IsNull(strings.Call<string>("get", 2));
+            Assert.AreEqual(2, strings.Call<int>("indexOf", "group"));
+        }
+
+        file.Call<bool>("delete");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void StringDictionary_SerializedNotificationRoundTrips()
+    {
+        var n = new AndroidNotification("Dictionary title", "Dictionary text", DateTime.Now.AddDays(1));
+        n.SmallIcon = "icon_0";
+        n.LargeIcon = "icon_1";
+        n.Group = "dictionary_group";
+        n.SortKey = "dictionary_sort_key";
+
+        using var context = GetContext();
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(7, n, kChannelId);
+        using var notification = builder.Call<AndroidJavaObject>("build");
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        // deserialization looks strings up in the one manager has
+        using var strings = manager.Call<AndroidJavaObject>("getStringDictionary");
+        using var utils = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationUtilities");
+        using var inline = utils.CallStatic<AndroidJavaObject>("serializeNotification", notification, false);
+        using var shared = utils.CallStatic<AndroidJavaObject>("serializeNotification", notification, false, strings);
+        Assert.Less(shared.Call<int>("remaining"), inline.Call<int>("remaining"));
+
+        using var deserialized = utils.CallStatic<AndroidJavaObject>("deserializeNotification", context, shared);
+        Assert.IsNotNull(deserialized);
+        using var deserializedNotification = deserialized.Call<AndroidJavaObject>("build");
+        var data = AndroidNotificationCenter.GetNotificationData(deserializedNotification);
+        Assert.AreEqual(7, data.Id);
+        Assert.AreEqual(kChannelId, data.Channel);
+        Assert.AreEqual(n.Title, data.Notification.Title);
+        Assert.AreEqual(n.SmallIcon, data.Notification.SmallIcon);
+        Assert.AreEqual(n.LargeIcon, data.Notification.LargeIcon);
+        Assert.AreEqual(n.Group, data.Notification.Group);
+        Assert.AreEqual(n.SortKey, data.Notification.SortKey);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void MasterAlarmEngine_TracksEarliestScheduledNotification()
+    {
+        using var context = GetContext();
+        // alarms are only registered on commit, not done here, fire times are long past to come before anything really scheduled
+        using var engine = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationMasterAlarmEngine", context);
+        engine.Call("schedule", 5001, 2000L, 0L);
+        engine.Call("schedule", 5002, 1000L, 0L);
+        Assert.IsTrue(engine.Call<bool>("isScheduled", 5001));
+        Assert.IsTrue(engine.Call<bool>("isScheduled", 5002));
+        Assert.AreEqual(1000L, engine.Call<long>("getNextFireTime"));
+
+        engine.Call("cancel", 5002);
+        Assert.IsFalse(engine.Call<bool>("isScheduled", 5002));
+        Assert.AreEqual(2000L, engine.Call<long>("getNextFireTime"));
+
+        // rescheduling replaces previous fire time
+        engine.Call("schedule", 5001, 3000L, 0L);
+        Assert.AreEqual(3000L, engine.Call<long>("getNextFireTime"));
+        engine.Call("cancel", 5001);
+        Assert.Greater(engine.Call<long>("getNextFireTime"), 3000L);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void BudgetAlarmEngine_CountsArmedAndQueuedNotifications()
+    {
+        using var context = GetContext();
+        // nothing is armed without commit, so all of these are queued, registry may have others scheduled
+        using var engine = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBudgetAlarmEngine", context, 2);
+        var initial = engine.Call<int[]>("getAlarmCounts");
+        engine.Call("schedule", 5011, 1000L, 0L);
+        engine.Call("schedule", 5012, 2000L, 0L);
+        engine.Call("schedule", 5013, 3000L, 0L);
+        Assert.IsTrue(engine.Call<bool>("isScheduled", 5013));
+        var counts = engine.Call<int[]>("getAlarmCounts");
+        Assert.AreEqual(initial[0], counts[0]);
+        Assert.AreEqual(initial[1] + 3, counts[1]);
+
+        engine.Call("cancel", 5012);
+        Assert.IsFalse(engine.Call<bool>("isScheduled", 5012));
+        counts = engine.Call<int[]>("getAlarmCounts");
+        Assert.AreEqual(initial[1] + 2, counts[1]);
+        engine.Call("cancel", 5011);
+        engine.Call("cancel", 5013);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void BuilderCache_EvictsNotificationDueLast()
+    {
+        var n = new AndroidNotification("title", "text", DateTime.Now.AddDays(1));
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(1, n, kChannelId);
+        using var cache = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBuilderCache", 2);
+
+        cache.Call("put", 1, 3000L, builder, 100);
+        cache.Call("put", 2, 1000L, builder, 100);
+        cache.Call("put", 3, 2000L, builder, 100);
+        Assert.AreEqual(2, cache.Call<int>("size"));
+        using (var cached = cache.Call<AndroidJavaObject>("get", 1))
+            Assert.IsNull(cached);
+        using (var cached = cache.Call<AndroidJavaObject>("get", 2))
+            Assert.IsNotNull(cached);
+
+        // one due later than everything cached is not kept
+        cache.Call("put", 4, 5000L, builder, 100);
+        using (var cached = cache.Call<AndroidJavaObject>("get", 4))
+            Assert.IsNull(cached);
+        cache.Call("remove", 2);
+        Assert.AreEqual(1, cache.Call<int>("size"));
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void BackgroundThread_ElidesSupersededTasks()
+    {
+        var n = new AndroidNotification("title", "text", DateTime.Now.AddDays(1));
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(1, n, kChannelId);
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var notifications = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIntMap");
+        // not started, so tasks stay queued
+        using var thread = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBackgroundThread", manager, notifications);
+
+        thread.Call("enqueueNotification", 1, builder, false, true);
+        thread.Call("enqueueNotification", 1, builder, false, false);
+        thread.Call("enqueueCancelNotification", 1);
+        Assert.AreEqual(2L, thread.Call<long>("getElidedTaskCount"));
+
+        thread.Call("enqueueNotification", 2, builder, false, true);
+        thread.Call("enqueueNotification", 3, builder, false, true);
+        thread.Call("enqueueCancelNotifications", new int[] { 2 });
+        Assert.AreEqual(2L, thread.Call<long>("getElidedTaskCount"));
+
+        // cancel for 1 and schedules for 2 and 3 are all made redundant
+        thread.Call("enqueueCancelAllNotifications");
+        Assert.AreEqual(5L, thread.Call<long>("getElidedTaskCount"));
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator BackgroundThread_CancelElidesScheduleThatBecameDue()
+    {
+        var fireTime = DateTime.Now.AddSeconds(1.5);
+        var n = new AndroidNotification("title", "text", fireTime);
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(1, n, kChannelId);
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var notifications = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIntMap");
+        // not started, so tasks stay queued
+        using var thread = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBackgroundThread", manager, notifications);
+
+        // queued in normal lane, by the time cancel comes it is due in less than a second
+        thread.Call("enqueueNotification", 1, builder, false, true);
+        float timeout = 10.0f;
+        while ((fireTime - DateTime.Now).TotalSeconds > 0.8 && timeout > 0)
+        {
+            yield return null;
+            timeout -= Time.deltaTime;
+        }
+        thread.Call("enqueueCancelNotification", 1);
+
+        Assert.AreEqual(1L, thread.Call<long>("getElidedTaskCount"));
+        Assert.AreEqual(1L, thread.Call<long[]>("getQueueStatus")[0]);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void BackgroundThread_LoadKeepsOnlyPendingNotifications()
+    {
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var registry = manager.Call<AndroidJavaObject>("getNotificationRegistry");
+        using var store = manager.Call<AndroidJavaObject>("getNotificationStore");
+        using var system = new AndroidJavaClass("java.lang.System");
+        long now = system.CallStatic<long>("currentTimeMillis");
+
+        // due later, repeating since an hour ago, and one that was due an hour ago
+        Register(registry, 6001, now + 3600000);
+        Register(registry, 6002, now - 3600000, 60000);
+        Register(registry, 6003, now - 3600000);
+        foreach (var id in new[] { 6001, 6002, 6003 })
+            Put(store, id, new sbyte[] { 1 });
+
+        using var notifications = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIntMap");
+        // not started, only loads what app start would
+        using var thread = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBackgroundThread", manager, notifications);
+        thread.Call("loadNotifications");
+
+        Assert.IsTrue(registry.Call<bool>("contains", 6001));
+        Assert.IsTrue(registry.Call<bool>("contains", 6002));
+        Assert.IsFalse(registry.Call<bool>("contains", 6003));
+        Assert.IsNotNull(Get(store, 6001));
+        Assert.IsNotNull(Get(store, 6002));
+        Assert.IsNull(Get(store, 6003));
+        // nothing is deserialized at startup
+        Assert.AreEqual(0, notifications.Call<int>("size"));
+
+        manager.Call("removeSavedNotification", 6001);
+        manager.Call("removeSavedNotification", 6002);
+        manager.Call("commitNotificationStorage");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void BackgroundThread_RejectPolicyRefusesSchedulesWhenFull()
+    {
+        var n = new AndroidNotification("title", "text", DateTime.Now.AddDays(1));
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(1, n, kChannelId);
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var notifications = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIntMap");
+        // not started, so tasks stay queued
+        using var thread = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBackgroundThread", manager, notifications);
+        thread.Call("setQueueLimit", 2, "reject");
+
+        Assert.IsTrue(thread.Call<bool>("admitNotifications", 1, 1));
+        thread.Call("enqueueNotification", 1, builder, false, true);
+        thread.Call("enqueueNotification", 2, builder, false, true);
+        Assert.IsFalse(thread.Call<bool>("admitNotifications", 1, 3));
+        Assert.IsFalse(thread.Call<bool>("admitNotifications", 5, -1));
+        // replaces the queued one, so queue does not grow
+        Assert.IsTrue(thread.Call<bool>("admitNotifications", 1, 2));
+        thread.Call("enqueueNotification", 2, builder, false, false);
+
+        var status = thread.Call<long[]>("getQueueStatus");
+        CollectionAssert.AreEqual(new long[] { 2, 2, 2, 6 }, status);
+
+        thread.Call("enqueueCancelAllNotifications");
+        status = thread.Call<long[]>("getQueueStatus");
+        Assert.AreEqual(1L, status[0]);
+        Assert.AreEqual(2L, status[1]);
+    }
+
+    static IEnumerator WaitForCommits(AndroidJavaObject manager)
+    {
+        // idle once nothing is queued and nothing got committed for longer than commit latency
+        float timeout = 10.0f;
+        long commits = -1;
+        while (timeout > 0)
+        {
+            long current = manager.Call<long>("getCommitCount");
+            if (current == commits && AndroidNotificationCenter.QueueStatus.PendingRequests == 0)
+                yield break;
+            commits = current;
+            yield return new WaitForSeconds(0.5f);
+            timeout -= 0.5f;
+        }
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator BackgroundThread_CommitsBurstOfSchedulesOnce()
+    {
+        var notifications = new AndroidNotification[50];
+        for (int i = 0; i < notifications.Length; ++i)
+            notifications[i] = new AndroidNotification("Burst title", "Burst text", DateTime.Now.AddDays(1));
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+
+        yield return WaitForCommits(manager);
+        long before = manager.Call<long>("getCommitCount");
+        var ids = AndroidNotificationCenter.SendNotifications(notifications, kChannelId);
+        yield return WaitForCommits(manager);
+
+        Assert.AreEqual(before + 1, manager.Call<long>("getCommitCount"));
+        foreach (var id in ids)
+            Assert.AreEqual(NotificationStatus.Scheduled, AndroidNotificationCenter.CheckScheduledNotificationStatus(id));
+        AndroidNotificationCenter.CancelScheduledNotifications(ids);
+        yield return WaitForCommits(manager);
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator SavedNotification_IsRestoredFromStorageWhenNeeded()
+    {
+        var n = new AndroidNotification("Saved title", "Saved text", DateTime.Now.AddDays(30));
+        n.IntentData = "saved data";
+        using var managerClass = new AndroidJavaClass("com.unity.androidnotifications.UnityNotificationManager");
+        using var manager = managerClass.GetStatic<AndroidJavaObject>("mUnityNotificationManager");
+        using var scheduledNotifications = manager.Get<AndroidJavaObject>("mScheduledNotifications");
+
+        int id = AndroidNotificationCenter.SendNotification(n, kChannelId);
+        yield return WaitForCommits(manager);
+
+        // builder is let go once saved, yet notification is still known and comes back from storage
+        using (var builder = scheduledNotifications.Call<AndroidJavaObject>("get", id))
+            Assert.IsNull(builder);
+        Assert.AreEqual(NotificationStatus.Scheduled, AndroidNotificationCenter.CheckScheduledNotificationStatus(id));
+        using (var restored = manager.Call<AndroidJavaObject>("deserializeNotificationBuilder", id))
+        {
+            Assert.IsNotNull(restored);
+            using var extras = restored.Call<AndroidJavaObject>("getExtras");
+            Assert.AreEqual("saved data", extras.Call<string>("getString", "data"));
+        }
+
+        AndroidNotificationCenter.CancelScheduledNotification(id);
+        yield return WaitForCommits(manager);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void QueueStatus_ReportsLimit()
+    {
+        var status = AndroidNotificationCenter.QueueStatus;
+        Assert.AreEqual(1000, status.Limit);
+        Assert.GreaterOrEqual(status.HighWatermark, status.PendingRequests);
+        Assert.IsFalse(status.IsFull);
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void BuilderCache_TrimKeepsNotificationsDueFirst()
+    {
+        var n = new AndroidNotification("title", "text", DateTime.Now.AddDays(1));
+        using var builder = AndroidNotificationCenter.CreateNotificationBuilder(1, n, kChannelId);
+        using var cache = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationBuilderCache", 4);
+
+        for (int i = 1; i <= 4; ++i)
+            cache.Call("put", i, i * 1000L, builder, 100);
+
+        Assert.AreEqual(200L, cache.Call<long>("trim", 2));
+        Assert.AreEqual(2, cache.Call<int>("size"));
+        using (var cached = cache.Call<AndroidJavaObject>("get", 1))
+            Assert.IsNotNull(cached);
+        using (var cached = cache.Call<AndroidJavaObject>("get", 3))
+            Assert.IsNull(cached);
+
+        Assert.AreEqual(0L, cache.Call<long>("trim", 2));
+        Assert.AreEqual(200L, cache.Call<long>("trim", 0));
+        Assert.AreEqual(0, cache.Call<int>("size"));
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void IdAllocator_ContinuesAfterReopen()
+    {
+        using var context = GetContext();
+        using var prefs = context.Call<AndroidJavaObject>("getSharedPreferences", "u_test_id_allocator", 0);
+        using (var editor = prefs.Call<AndroidJavaObject>("edit"))
+        {
+            editor.Call<AndroidJavaObject>("clear").Dispose();
+            editor.Call<bool>("commit");
+        }
+
+        int last;
+        using (var allocator = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIdAllocator", prefs))
+        {
+            var first = allocator.Call<int>("next");
+            last = allocator.Call<int>("next");
+            Assert.AreEqual(first + 1, last);
+        }
+
+        // new process starts past what could have been handed out
+        using (var allocator = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIdAllocator", prefs))
+            Assert.Greater(allocator.Call<int>("next"), last);
+
+        using (var editor = prefs.Call<AndroidJavaObject>("edit"))
+        {
+            editor.Call<AndroidJavaObject>("clear").Dispose();
+            editor.Call<bool>("commit");
+        }
+    }
+
+    [UnityTest]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public IEnumerator IdAllocator_ContinuesAfterReopen_WhenBlocksReservedInBackground()
+    {
+        using var context = GetContext();
+        using var prefs = context.Call<AndroidJavaObject>("getSharedPreferences", "u_test_id_allocator", 0);
+        using (var editor = prefs.Call<AndroidJavaObject>("edit"))
+        {
+            editor.Call<AndroidJavaObject>("clear").Dispose();
+            editor.Call<bool>("commit");
+        }
+
+        // several blocks, some reserved ahead, some waited for
+        int last;
+        using (var allocator = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIdAllocator", prefs))
+        {
+            last = allocator.Call<int>("next");
+            for (int i = 0; i < 3000; ++i)
+            {
+                var id = allocator.Call<int>("next");
+                Assert.AreEqual(last + 1, id);
+                last = id;
+            }
+        }
+
+        using (var allocator = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIdAllocator", prefs))
+            Assert.Greater(allocator.Call<int>("next"), last);
+
+        // let a reservation still running in background finish before cleaning up
+        yield return new WaitForSeconds(0.5f);
+        using (var editor = prefs.Call<AndroidJavaObject>("edit"))
+        {
+            editor.Call<AndroidJavaObject>("clear").Dispose();
+            editor.Call<bool>("commit");
+        }
+    }
+
+    static int GetInt(AndroidJavaObject map, int key)
+    {
+        using (var value = map.Call<AndroidJavaObject>("get", key))
+            return value == null ? -1 : value.Call<int>("intValue");
+    }
+
+    [Test]
+    [UnityPlatform(RuntimePlatform.Android)]
+    public void IntMap_FindsEntriesAfterRemovals()
+    {
+        using var map = new AndroidJavaObject("com.unity.androidnotifications.UnityNotificationIntMap");
+        // enough to resize a few times and to have keys probing past each other, negative IDs are valid too
+        const int count = 300;
+        for (int i = 0; i < count; ++i)
+        {
+            using (var value = new AndroidJavaObject("java.lang.Integer", i))
+                Assert.IsNull(map.Call<AndroidJavaObject>("put", i % 2 == 0 ? i : -i, value));
+        }
+        using (var value = new AndroidJavaObject("java.lang.Integer", 1000))
+        using (var old = map.Call<AndroidJavaObject>("put", 10, value))
+            Assert.AreEqual(10, old.Call<int>("intValue"));
+        Assert.AreEqual(count, map.Call<int>("size"));
+
+        for (int i = 0; i < count; i += 3)
+        {
+            using (var removed = map.Call<AndroidJavaObject>("remove", i % 2 == 0 ? i : -i))
+                Assert.IsNotNull(removed);
+        }
+
+        int expectedSize = 0;
+        for (int i = 0; i < count; ++i)
+        {
+            int key = i % 2 == 0 ? i : -i;
+            if (i % 3 == 0)
+            {
+                Assert.AreEqual(-1, GetInt(map, key));
+                continue;
+            }
+            Assert.AreEqual(key == 10 ? 1000 : i, GetInt(map, key));
+            ++expectedSize;
+        }
+        Assert.AreEqual(expectedSize, map.Call<int>("size"));
+        Assert.AreEqual(expectedSize, map.Call<int[]>("keys").Length);
+        Assert.AreEqual(-1, GetInt(map, count));
+    }
+}